@@ -0,0 +1,278 @@
+package net.classicube.launcher;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+// Writes the launcher's log file from a background thread. Logging code (often on the EDT, or on a
+// download worker) only puts the record on a lock-free queue -- all formatting and file I/O happens
+// on the writer thread, which flushes the file whenever it runs out of records to write.
+// The queue is bounded: past CAPACITY, records below WARNING are dropped, and past MAX_CAPACITY,
+// all records are. A line saying how many were dropped is written once the writer catches up. Very long messages (e.g. whole HTML
+// pages) are cut at MAX_MESSAGE_LENGTH. Records at INFO and above are also echoed to System.err
+// (where the debug console picks them up), like the default ConsoleHandler did.
+// flush() and close() wait until everything queued so far is on disk. Once the file grows past
+// MAX_LOG_SIZE, it is rotated (see SharedUpdaterCode.rotateLog) and a new one is started.
+final class AsyncLogHandler extends Handler {
+
+    private static final int CAPACITY = 4096, // records
+            MAX_CAPACITY = 2 * CAPACITY; // records, including WARNING and above
+    private static final int MAX_MESSAGE_LENGTH = 8192; // chars
+    private static final long IDLE_PARK_NANOS = 1000L * 1000 * 1000; // 1 s
+    private static final long CLOSE_TIMEOUT = 5000; // ms
+    private static final long MAX_LOG_SIZE = 4 * 1024 * 1024; // chars
+
+    private final ConcurrentLinkedQueue<LogRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private final AtomicLong enqueuedTotal = new AtomicLong();
+    private volatile boolean closed;
+
+    // flush() callers wait on flushLock until the writer has flushed the records they asked for.
+    private final Object flushLock = new Object();
+    // Written under flushLock. flushRequested is volatile, so the writer can check it without locking;
+    // flushedTotal is only written by the writer thread.
+    private volatile long flushRequested;
+    private long flushedTotal;
+    private boolean writerDone; // guarded by flushLock
+
+    private final File logFile, oldLogFile;
+    private Writer out; // only used by the writer thread (after construction)
+    private long logSize;
+    private final Thread writerThread;
+
+    AsyncLogHandler(final File logFile, final File oldLogFile)
+            throws IOException {
+        if (logFile == null) {
+            throw new NullPointerException("logFile");
+        }
+        if (oldLogFile == null) {
+            throw new NullPointerException("oldLogFile");
+        }
+        this.logFile = logFile;
+        this.oldLogFile = oldLogFile;
+        out = openLogFile(logFile);
+        setFormatter(new LineFormatter());
+        writerThread = new Thread("LogWriter") {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        };
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // =============================================================================================
+    //                                                                                  LOGGING SIDE
+    // =============================================================================================
+    @Override
+    public void publish(final LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        final int queued = queuedCount.incrementAndGet();
+        if (queued > MAX_CAPACITY
+                || (queued > CAPACITY && record.getLevel().intValue() < Level.WARNING.intValue())) {
+            queuedCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+        // Counted before the record is queued, so that flush() never waits for fewer records
+        // than were queued before it was called.
+        enqueuedTotal.incrementAndGet();
+        queue.offer(record);
+        if (queued == 1) {
+            // Queue was empty, so the writer may be parked
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    // Blocks until all records queued before this call are written and flushed.
+    @Override
+    public void flush() {
+        if (Thread.currentThread() == writerThread) {
+            return; // e.g. logging while rotating; waiting for ourselves would never end
+        }
+        final long target = enqueuedTotal.get();
+        synchronized (flushLock) {
+            if (flushedTotal >= target || writerDone) {
+                return;
+            }
+            flushRequested = Math.max(flushRequested, target);
+        }
+        LockSupport.unpark(writerThread);
+        synchronized (flushLock) {
+            while (flushedTotal < target && !writerDone) {
+                try {
+                    flushLock.wait();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Writes out everything that's queued, then closes the file. Safe to call more than once.
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(CLOSE_TIMEOUT);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // =============================================================================================
+    //                                                                                   WRITER SIDE
+    // =============================================================================================
+    private void writeLoop() {
+        long written = 0;
+        try {
+            while (true) {
+                final LogRecord record = queue.poll();
+                if (record == null) {
+                    writeDroppedSummary();
+                    flushFile(written);
+                    if (closed) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+                queuedCount.decrementAndGet();
+                written++;
+                write(record);
+                if (isFlushRequested(written)) {
+                    // Someone is waiting in flush(), and the queue may not run dry any time soon
+                    flushFile(written);
+                }
+            }
+            try {
+                out.close();
+            } catch (final IOException ex) {
+                reportError("Could not close log file", ex, ErrorManager.CLOSE_FAILURE);
+            }
+        } finally {
+            synchronized (flushLock) {
+                writerDone = true;
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    // Only called on the writer thread
+    private boolean isFlushRequested(final long written) {
+        final long requested = flushRequested;
+        return written >= requested && requested > flushedTotal;
+    }
+
+    // Flushes the file, and wakes up flush() callers that were waiting for the first "written" records.
+    private void flushFile(final long written) {
+        try {
+            out.flush();
+        } catch (final IOException ex) {
+            reportError("Could not flush log file", ex, ErrorManager.FLUSH_FAILURE);
+        }
+        synchronized (flushLock) {
+            flushedTotal = written;
+            flushLock.notifyAll();
+        }
+    }
+
+    private void write(final LogRecord record) {
+        final String line;
+        try {
+            line = getFormatter().format(record);
+        } catch (final RuntimeException ex) {
+            reportError("Could not format log record", ex, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+        try {
+            if (logSize + line.length() > MAX_LOG_SIZE) {
+                rotate();
+            }
+            out.write(line);
+            logSize += line.length();
+        } catch (final IOException ex) {
+            reportError("Could not write log file", ex, ErrorManager.WRITE_FAILURE);
+        }
+        if (record.getLevel().intValue() >= Level.INFO.intValue()) {
+            System.err.print(line);
+        }
+    }
+
+    private void rotate()
+            throws IOException {
+        out.close();
+        SharedUpdaterCode.rotateLog(LogUtil.getLogger(), logFile, oldLogFile);
+        out = openLogFile(logFile);
+        logSize = 0;
+    }
+
+    private static Writer openLogFile(final File file)
+            throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private void writeDroppedSummary() {
+        final int dropped = droppedCount.getAndSet(0);
+        if (dropped > 0) {
+            write(new LogRecord(Level.WARNING, "Logging fell behind: " + dropped + " log records were dropped."));
+        }
+    }
+
+    // One line per record (plus stack trace, if any). Only used on the writer thread.
+    // Source class/method are not shown: finding them from a different thread would be wrong.
+    private static final class LineFormatter extends Formatter {
+
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        private final Date date = new Date();
+
+        @Override
+        public String format(final LogRecord record) {
+            final StringBuilder sb = new StringBuilder(128);
+            date.setTime(record.getMillis());
+            sb.append(dateFormat.format(date))
+                    .append(' ').append(record.getLevel().getName())
+                    .append(" [").append(record.getThreadID()).append("] ");
+            final String message = formatMessage(record);
+            if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+                sb.append(message, 0, MAX_MESSAGE_LENGTH)
+                        .append("... (").append(message.length() - MAX_MESSAGE_LENGTH).append(" more chars)");
+            } else {
+                sb.append(message);
+            }
+            sb.append(System.lineSeparator());
+            if (record.getThrown() != null) {
+                final StringWriter stackTrace = new StringWriter();
+                record.getThrown().printStackTrace(new PrintWriter(stackTrace));
+                sb.append(stackTrace);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -181,11 +181,13 @@ final class ClassiCubeNetSession extends GameSession {
         protected ServerListEntry[] doInBackground()
                 throws Exception {
             LogUtil.getLogger().log(Level.FINE, "ClassiCubeNetGetServerListWorker");
-            final String serverListString = HttpUtil.downloadString(SERVER_LIST_URL);
-
             final ArrayList<ServerListEntry> servers = new ArrayList<>();
 
-            final JsonArray array = JsonParser.array().from(serverListString);
+            // Parsed as it arrives, rather than downloaded into a string first
+            final JsonArray array;
+            try (final HttpResponse response = HttpUtil.openGet(SERVER_LIST_URL)) {
+                array = JsonParser.array().from(response.getReader());
+            }
 
             for (final Object rawRow : array) { //iterate through and add servers to the list
                 final JsonObject row = (JsonObject) rawRow;
@@ -0,0 +1,94 @@
+package net.classicube.launcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+// Entry point of a pre-spawned ("parked") client process -- see ParkedClient. Never runs in the
+// launcher's own JVM. While the player is still picking a server, this loads LWJGL's natives and
+// client's classes, then waits for the launcher to send client's arguments over standard input.
+// Protocol (UTF-8, one item per line): number of arguments, then each argument.
+// If standard input is closed first (launcher exited, or discarded this process), just exits.
+// Only depends on the Java class library: it's run from its own small jar on client's classpath.
+public final class ClientBootstrap {
+
+    private static final String LWJGL_CLASS = "org.lwjgl.Sys";
+
+    // args: <client main class> <client.jar path>
+    public static void main(final String[] args)
+            throws Throwable {
+        if (args.length != 2) {
+            System.err.println("Usage: ClientBootstrap <client main class> <client.jar path>");
+            System.exit(1);
+        }
+        final long startTime = System.nanoTime();
+        final int classCount = warmUp(args[1]);
+        System.out.println("ClientBootstrap: warmed up " + classCount + " classes in "
+                + (System.nanoTime() - startTime) / 1000000 + " ms");
+
+        final String[] clientArgs = readArgs();
+        if (clientArgs == null) {
+            System.exit(0);
+        }
+        final Method clientMain = Class.forName(args[0]).getMethod("main", String[].class);
+        try {
+            clientMain.invoke(null, (Object) clientArgs);
+        } catch (final InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    // Loads (but does not initialize) every class from client.jar, and initializes LWJGL's Sys
+    // class, which loads the native library. Failures are ignored: the client reports them itself.
+    private static int warmUp(final String clientJarPath) {
+        final ClassLoader loader = ClientBootstrap.class.getClassLoader();
+        int classCount = 0;
+        try {
+            Class.forName(LWJGL_CLASS, true, loader);
+        } catch (final Throwable ex) {
+            System.err.println("ClientBootstrap: could not preload LWJGL: " + ex);
+        }
+        try (final JarFile jarFile = new JarFile(clientJarPath)) {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    final String className = name.substring(0, name.length() - 6).replace('/', '.');
+                    try {
+                        Class.forName(className, false, loader);
+                        classCount++;
+                    } catch (final Throwable ex) {
+                        // Not needed at runtime (or will fail later, with a better message)
+                    }
+                }
+            }
+        } catch (final IOException ex) {
+            System.err.println("ClientBootstrap: could not preload client classes: " + ex);
+        }
+        return classCount;
+    }
+
+    // Returns null if standard input was closed before all arguments arrived.
+    private static String[] readArgs()
+            throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        final String countLine = reader.readLine();
+        if (countLine == null) {
+            return null;
+        }
+        final String[] clientArgs = new String[Integer.parseInt(countLine.trim())];
+        for (int i = 0; i < clientArgs.length; i++) {
+            clientArgs[i] = reader.readLine();
+            if (clientArgs[i] == null) {
+                return null;
+            }
+        }
+        return clientArgs;
+    }
+}
@@ -0,0 +1,298 @@
+package net.classicube.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Closes the loop on ClientJvmTuning's guesses: the client is started with GC logging (Java 9+
+// unified logging, "gc" tag at info level, which is one line per collection), and the next time
+// a client is started, the previous session's log is read to see how well its settings worked.
+//  - Heap too small (high occupancy after GC, or full collections): -Xmx is raised.
+//  - Heap much bigger than ever used (after an earlier raise): -Xmx is lowered back.
+//  - Heap filled so fast that collections come back-to-back: -Xmx is raised, for a bigger young gen.
+//  - Stop-the-world pauses long enough to be seen as stutter, with a non-concurrent GC: G1 is used.
+// The log doesn't say what settings the session had, so they go into an info file next to it.
+// A pre-spawned client (see ParkedClient) logs from the moment it's spawned, so the info file also
+// says how long it was parked: GC log entries from before the hand-off are not part of the session.
+// Recommendations are applied through Prefs, unless the player picked these settings themselves
+// (then they are only logged), or changed them since that session. The reasoning is always logged.
+final class ClientGcAdvisor {
+
+    private static final String LOG_FILE_NAME = "client-gc.log",
+            INFO_FILE_NAME = "client-gc.info";
+    private static final int MIN_JAVA_VERSION = 9;
+    // Info file's start time for a client that was pre-spawned, but not (yet) handed off
+    private static final double NOT_PLAYED = -1;
+
+    // Sessions shorter than this don't say much about the heap a game needs
+    private static final double MIN_SESSION_SECONDS = 120;
+    private static final int MIN_COLLECTIONS = 5;
+
+    private static final double HIGH_OCCUPANCY = 0.7, // of -Xmx, peak after GC
+            LOW_OCCUPANCY = 0.2,
+            TARGET_OCCUPANCY = 0.4, // what a resized heap aims for
+            MIN_SECONDS_TO_FILL = 2; // time for allocations to fill a quarter of the heap
+    private static final double STUTTER_PAUSE_MILLIS = 100;
+
+    // e.g. "[12.345s][info][gc] GC(7) Pause Young (Normal) (G1 Evacuation Pause) 24M->4M(256M) 3.456ms"
+    private static final Pattern PAUSE_PATTERN = Pattern.compile(
+            "^\\[([\\d.]+)s\\].*\\bGC\\(\\d+\\) (Pause .*?) (\\d+)([KMG])->(\\d+)([KMG])\\((\\d+)([KMG])\\) ([\\d.]+)ms");
+    // e.g. "[0.008s][info][gc] Using G1"
+    private static final Pattern GC_NAME_PATTERN = Pattern.compile("^\\[[^\\]]*\\].*\\] Using (.+)$");
+    // any explicit choice of collector in Java arguments
+    private static final Pattern GC_ARG_PATTERN = Pattern.compile("-XX:[+-]Use\\w+GC");
+
+    private static boolean analyzed;
+
+    // JVM arguments that turn on GC logging, or nothing if client's Java is too old for it.
+    // Log goes into the client's working directory (see ClientLauncher), so no path quoting is needed.
+    public static List<String> getJvmArgs() {
+        if (JavaRuntimeFinder.getClientRuntime().featureVersion < MIN_JAVA_VERSION) {
+            return Collections.emptyList();
+        }
+        // filecount=0: no rotation, every session starts the file over
+        return Arrays.asList("-Xlog:gc:file=" + LOG_FILE_NAME + ":uptime,level,tags:filecount=0");
+    }
+
+    // Called when a client starts playing. parkedSeconds is how long a pre-spawned client waited
+    // to be handed off (0 for a freshly started client); earlier GC log entries are ignored.
+    public static void recordSessionStart(final double parkedSeconds) {
+        writeInfo(parkedSeconds);
+    }
+
+    // Called when a client is pre-spawned. Until it's handed off, its log says nothing about a game
+    // session -- and if it never is (e.g. the launcher was closed first), the log is not analyzed.
+    public static void recordParkedStart() {
+        writeInfo(NOT_PLAYED);
+    }
+
+    // Info file lines: -Xmx (in megabytes), session start (in seconds of JVM uptime), Java args.
+    // Written with current settings, which are the ones that the client was started with.
+    private static void writeInfo(final double startSeconds) {
+        final File infoFile = new File(PathUtil.getClientDir(), INFO_FILE_NAME);
+        final String info = Prefs.getMaxMemory() + "\n" + startSeconds + "\n" + Prefs.getJavaArgs();
+        try {
+            Files.write(infoFile.toPath(), info.getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not write " + INFO_FILE_NAME, ex);
+            // A stale info file would be mistaken for this session's settings
+            infoFile.delete();
+        }
+    }
+
+    // Reads previous session's log (once per launcher run, before a client overwrites it),
+    // and applies or logs the recommendations.
+    public static synchronized void analyzePreviousSession() {
+        if (analyzed) {
+            return;
+        }
+        analyzed = true;
+        final File logFile = new File(PathUtil.getClientDir(), LOG_FILE_NAME);
+        final File infoFile = new File(PathUtil.getClientDir(), INFO_FILE_NAME);
+        if (!logFile.exists() || !infoFile.exists()) {
+            return;
+        }
+        final Session session;
+        final int sessionMaxMemory;
+        final String sessionJavaArgs;
+        try {
+            final String[] info = new String(Files.readAllBytes(infoFile.toPath()), StandardCharsets.UTF_8)
+                    .split("\n", 3);
+            if (info.length < 3) {
+                LogUtil.getLogger().log(Level.INFO, "Client GC log is from an older launcher; not analyzed.");
+                return;
+            }
+            sessionMaxMemory = Integer.parseInt(info[0].trim());
+            final double startSeconds = Double.parseDouble(info[1].trim());
+            sessionJavaArgs = info[2];
+            if (startSeconds < 0) {
+                LogUtil.getLogger().log(Level.INFO, "Previous client was pre-spawned, but never played.");
+                return;
+            }
+            session = Session.read(logFile, startSeconds);
+        } catch (final IOException | NumberFormatException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not read client GC log", ex);
+            return;
+        }
+        recommend(session, sessionMaxMemory, sessionJavaArgs);
+    }
+
+    private static void recommend(final Session session, final int sessionMaxMemory,
+            final String sessionJavaArgs) {
+        final int maxMemory = Prefs.getMaxMemory();
+        final String javaArgs = Prefs.getJavaArgs();
+        LogUtil.getLogger().log(Level.INFO, "Previous client session (-Xmx{0}m): {1}",
+                new Object[]{Integer.toString(sessionMaxMemory), session});
+        if (session.seconds < MIN_SESSION_SECONDS || session.collections < MIN_COLLECTIONS) {
+            LogUtil.getLogger().log(Level.INFO, "GC advice: session too short to judge memory settings.");
+            return;
+        }
+        if (sessionMaxMemory != maxMemory || !sessionJavaArgs.equals(javaArgs)) {
+            LogUtil.getLogger().log(Level.INFO, "GC advice: memory settings changed since that session.");
+            return;
+        }
+
+        final List<String> reasons = new ArrayList<>();
+        int newMaxMemory = maxMemory;
+        final double occupancy = session.peakAfterMb / maxMemory;
+        final double secondsToFillQuarter = (session.allocationRateMb() > 0
+                ? maxMemory / 4.0 / session.allocationRateMb()
+                : Double.MAX_VALUE);
+        // Serial and Parallel collectors clean the old generation with full collections anyway.
+        // For the concurrent ones, a full collection means they could not keep up.
+        final boolean concurrentFailed = session.fullCollections > 0 && !isStopTheWorldCollector(session.gcName);
+        if (occupancy > HIGH_OCCUPANCY || concurrentFailed) {
+            newMaxMemory = Math.max(maxMemory, roundHeapSize(session.peakAfterMb / TARGET_OCCUPANCY));
+            reasons.add(String.format("heap was %.0f%% full after GC, with %d full collections",
+                    occupancy * 100, session.fullCollections));
+        } else if (secondsToFillQuarter < MIN_SECONDS_TO_FILL) {
+            newMaxMemory = roundHeapSize(maxMemory * 1.5);
+            reasons.add(String.format("allocating %.0f MB/s filled a quarter of the heap every %.1f s",
+                    session.allocationRateMb(), secondsToFillQuarter));
+        } else if (occupancy < LOW_OCCUPANCY && maxMemory > Prefs.getMaxMemoryDefault()) {
+            newMaxMemory = Math.max(Prefs.getMaxMemoryDefault(), roundHeapSize(session.peakAfterMb / TARGET_OCCUPANCY));
+            reasons.add(String.format("heap was never more than %.0f%% full after GC", occupancy * 100));
+        }
+        if (newMaxMemory > maxMemory) {
+            newMaxMemory = Math.max(maxMemory, Math.min(newMaxMemory, ClientJvmTuning.getMaxMemoryLimit()));
+        }
+
+        String newJavaArgs = javaArgs;
+        if (session.stutterPauses > 0 && isStopTheWorldCollector(session.gcName)
+                && ClientJvmTuning.getCores() > 1) {
+            newJavaArgs = GC_ARG_PATTERN.matcher(javaArgs).replaceAll("").trim().replaceAll("\\s+", " ")
+                    + ' ' + ClientJvmTuning.G1_ARGS;
+            reasons.add(String.format("%d pauses over %.0f ms (longest %.0f ms) with %s collector",
+                    session.stutterPauses, STUTTER_PAUSE_MILLIS, session.maxPauseMillis, session.gcName));
+        }
+
+        if (newMaxMemory == maxMemory && newJavaArgs.equals(javaArgs)) {
+            LogUtil.getLogger().log(Level.INFO, "GC advice: current memory settings look fine.");
+            return;
+        }
+        final String advice = String.format("GC advice: -Xmx%dm -> -Xmx%dm%s, because %s.",
+                maxMemory, newMaxMemory,
+                (newJavaArgs.equals(javaArgs) ? "" : ", switch to G1"),
+                join(reasons));
+
+        // Don't second-guess the player: only settings at default (or set by us) are changed.
+        final boolean canApply = Prefs.getClientSettingsTuned()
+                || (maxMemory == Prefs.getMaxMemoryDefault() && javaArgs.equals(Prefs.getJavaArgsDefault()));
+        if (canApply) {
+            Prefs.setMaxMemory(newMaxMemory);
+            Prefs.setJavaArgs(newJavaArgs);
+            Prefs.setClientSettingsTuned(true);
+            LogUtil.getLogger().log(Level.INFO, "{0} Applied.", advice);
+        } else {
+            LogUtil.getLogger().log(Level.INFO,
+                    "{0} Not applied, memory settings were set in preferences.", advice);
+        }
+    }
+
+    // Concurrent collectors (G1, Shenandoah, Z) are already as good as it gets for pauses.
+    private static boolean isStopTheWorldCollector(final String gcName) {
+        return gcName != null && (gcName.startsWith("Serial") || gcName.startsWith("Parallel"));
+    }
+
+    private static int roundHeapSize(final double megabytes) {
+        final int granularity = 64;
+        return (int) Math.ceil(megabytes / granularity) * granularity;
+    }
+
+    private static String join(final List<String> parts) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String part : parts) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    // =============================================================================================
+    //                                                                                   LOG PARSING
+    // =============================================================================================
+    private static final class Session {
+
+        String gcName;
+        int collections, fullCollections, stutterPauses;
+        double seconds, maxPauseMillis, totalPauseMillis, peakAfterMb, allocatedMb;
+
+        // Entries before startSeconds (of JVM uptime) are skipped, except to track heap usage.
+        static Session read(final File logFile, final double startSeconds)
+                throws IOException {
+            final Session session = new Session();
+            double lastAfterMb = 0;
+            try (final BufferedReader reader = Files.newBufferedReader(logFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final Matcher pause = PAUSE_PATTERN.matcher(line);
+                    if (pause.find()) {
+                        final String kind = pause.group(2);
+                        final double beforeMb = toMegabytes(pause.group(3), pause.group(4));
+                        final double afterMb = toMegabytes(pause.group(5), pause.group(6));
+                        final double pauseMillis = Double.parseDouble(pause.group(9));
+                        final double uptime = Double.parseDouble(pause.group(1));
+                        if (uptime < startSeconds) {
+                            lastAfterMb = afterMb;
+                            continue;
+                        }
+                        session.seconds = uptime - startSeconds;
+                        session.collections++;
+                        if (kind.startsWith("Pause Full") && !kind.contains("System.gc()")) {
+                            session.fullCollections++;
+                        }
+                        if (pauseMillis > STUTTER_PAUSE_MILLIS) {
+                            session.stutterPauses++;
+                        }
+                        session.maxPauseMillis = Math.max(session.maxPauseMillis, pauseMillis);
+                        session.totalPauseMillis += pauseMillis;
+                        session.peakAfterMb = Math.max(session.peakAfterMb, afterMb);
+                        session.allocatedMb += Math.max(0, beforeMb - lastAfterMb);
+                        lastAfterMb = afterMb;
+                        continue;
+                    }
+                    final Matcher gcName = GC_NAME_PATTERN.matcher(line);
+                    if (gcName.find()) {
+                        session.gcName = gcName.group(1);
+                    }
+                }
+            }
+            return session;
+        }
+
+        double allocationRateMb() {
+            return (seconds > 0 ? allocatedMb / seconds : 0);
+        }
+
+        private static double toMegabytes(final String number, final String unit) {
+            final double value = Double.parseDouble(number);
+            switch (unit) {
+                case "K":
+                    return value / 1024;
+                case "G":
+                    return value * 1024;
+                default:
+                    return value;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s collector, %.0f s, %d collections (%d full), "
+                    + "pauses %.0f ms total / %.1f ms max, peak %.0f MB after GC, allocating %.1f MB/s",
+                    gcName, seconds, collections, fullCollections,
+                    totalPauseMillis, maxPauseMillis, peakAfterMb, allocationRateMb());
+        }
+    }
+}
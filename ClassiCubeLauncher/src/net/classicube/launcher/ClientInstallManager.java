@@ -0,0 +1,240 @@
+package net.classicube.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.logging.Level;
+
+// Manages side-by-side installs of client binaries (client.jar, libs, natives).
+// Each version lives in its own directory under "versions", and files that did not change between
+// versions are shared through hardlinks. A pointer file selects the current version, so that
+// upgrading or rolling back is just a pointer flip -- no copying, and no network access.
+// Client's working directory (resources, options, logs, screenshots) is not versioned.
+public final class ClientInstallManager {
+
+    public static final String VERSIONS_DIR_NAME = "versions",
+            CURRENT_FILE_NAME = "current",
+            PREVIOUS_FILE_NAME = "previous";
+    // Paths (relative to install directory) that make up one client install
+    static final String[] INSTALL_PATHS = {"client.jar", "libs", "natives"};
+    private static boolean hardlinksSupported = true;
+
+    // Returns the directory that the current client install lives in.
+    // Falls back to the client directory itself for older, non-versioned installs.
+    public static synchronized File getCurrentInstallDir() {
+        final String version = getCurrentVersion();
+        if (version != null) {
+            final File dir = getInstallDir(version);
+            if (dir.isDirectory()) {
+                return dir;
+            }
+            LogUtil.getLogger().log(Level.WARNING,
+                    "Current client install ({0}) is missing. Falling back to client directory.", version);
+        }
+        return PathUtil.getClientDir();
+    }
+
+    // Returns version ID of current install, or null if client is not (yet) installed side-by-side.
+    public static synchronized String getCurrentVersion() {
+        return readPointer(CURRENT_FILE_NAME);
+    }
+
+    // Returns version ID of the install that was current before the last switch, or null if none.
+    public static synchronized String getPreviousVersion() {
+        return readPointer(PREVIOUS_FILE_NAME);
+    }
+
+    public static File getInstallDir(final String version) {
+        if (version == null) {
+            throw new NullPointerException("version");
+        }
+        return new File(getVersionsDir(), version);
+    }
+
+    // Creates (or completes) the install directory for given version by linking all files
+    // from sourceDir, except for the ones listed in skipPaths (which are about to be downloaded).
+    // Files that already exist in the target directory are left alone.
+    public static synchronized File prepareInstall(final String version, final File sourceDir,
+            final Set<String> skipPaths)
+            throws IOException {
+        if (version == null) {
+            throw new NullPointerException("version");
+        }
+        if (sourceDir == null) {
+            throw new NullPointerException("sourceDir");
+        }
+        if (skipPaths == null) {
+            throw new NullPointerException("skipPaths");
+        }
+        final File installDir = getInstallDir(version);
+        if (!installDir.exists() && !installDir.mkdirs()) {
+            throw new IOException("Unable to make directory " + installDir);
+        }
+        if (installDir.getCanonicalFile().equals(sourceDir.getCanonicalFile())) {
+            return installDir;
+        }
+        LogUtil.getLogger().log(Level.INFO, "Preparing client install {0} from {1}",
+                new Object[]{version, sourceDir});
+
+        final Path sourceBase = sourceDir.toPath();
+        final Path targetBase = installDir.toPath();
+        for (final String installPath : INSTALL_PATHS) {
+            final Path source = sourceBase.resolve(installPath);
+            if (!Files.exists(source)) {
+                continue;
+            }
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                        throws IOException {
+                    final String relativePath = sourceBase.relativize(file).toString()
+                            .replace(File.separatorChar, '/');
+                    final Path target = targetBase.resolve(relativePath);
+                    if (!skipPaths.contains(relativePath) && !Files.exists(target)) {
+                        linkOrCopy(file, target);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return installDir;
+    }
+
+    // Makes given version current. Whatever was current before is kept around for rollback.
+    // Versions that are neither current nor previous are deleted.
+    public static synchronized void commit(final String version)
+            throws IOException {
+        if (version == null) {
+            throw new NullPointerException("version");
+        }
+        final String oldVersion = getCurrentVersion();
+        if (version.equals(oldVersion)) {
+            return;
+        }
+        if (oldVersion != null) {
+            writePointer(PREVIOUS_FILE_NAME, oldVersion);
+        }
+        writePointer(CURRENT_FILE_NAME, version);
+        LogUtil.getLogger().log(Level.INFO, "Switched client install from {0} to {1}",
+                new Object[]{oldVersion, version});
+        deleteUnusedInstalls();
+    }
+
+    public static synchronized boolean canRollBack() {
+        final String previous = getPreviousVersion();
+        return previous != null && getInstallDir(previous).isDirectory();
+    }
+
+    // Swaps current and previous installs. Returns false if there is nothing to roll back to.
+    public static synchronized boolean rollBack()
+            throws IOException {
+        if (!canRollBack()) {
+            return false;
+        }
+        final String previous = getPreviousVersion();
+        final String current = getCurrentVersion();
+        writePointer(CURRENT_FILE_NAME, previous);
+        if (current != null) {
+            writePointer(PREVIOUS_FILE_NAME, current);
+        }
+        LogUtil.getLogger().log(Level.INFO, "Rolled back client install from {0} to {1}",
+                new Object[]{current, previous});
+        return true;
+    }
+
+    private static File getVersionsDir() {
+        return new File(PathUtil.getClientDir(), VERSIONS_DIR_NAME);
+    }
+
+    private static String readPointer(final String fileName) {
+        final File pointerFile = new File(getVersionsDir(), fileName);
+        if (!pointerFile.exists()) {
+            return null;
+        }
+        try {
+            final String version = new String(Files.readAllBytes(pointerFile.toPath()),
+                    StandardCharsets.UTF_8).trim();
+            return (version.isEmpty() ? null : version);
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not read " + pointerFile, ex);
+            return null;
+        }
+    }
+
+    // Pointer files are written to a temporary file first, then moved into place.
+    private static void writePointer(final String fileName, final String version)
+            throws IOException {
+        final File versionsDir = getVersionsDir();
+        if (!versionsDir.exists() && !versionsDir.mkdirs()) {
+            throw new IOException("Unable to make directory " + versionsDir);
+        }
+        final File tempFile = File.createTempFile(fileName, ".tmp", versionsDir);
+        Files.write(tempFile.toPath(), version.getBytes(StandardCharsets.UTF_8));
+        PathUtil.replaceFile(tempFile, new File(versionsDir, fileName));
+    }
+
+    private static void linkOrCopy(final Path source, final Path target)
+            throws IOException {
+        Files.createDirectories(target.getParent());
+        if (hardlinksSupported) {
+            try {
+                Files.createLink(target, source);
+                return;
+            } catch (final UnsupportedOperationException | IOException ex) {
+                LogUtil.getLogger().log(Level.WARNING,
+                        "Could not create hardlinks, falling back to copying files: {0}", ex.toString());
+                hardlinksSupported = false;
+            }
+        }
+        Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    private static void deleteUnusedInstalls() {
+        final String current = getCurrentVersion();
+        final String previous = getPreviousVersion();
+        final File[] dirs = getVersionsDir().listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (final File dir : dirs) {
+            if (dir.isDirectory() && !dir.getName().equals(current) && !dir.getName().equals(previous)) {
+                LogUtil.getLogger().log(Level.INFO, "Deleting unused client install {0}", dir.getName());
+                try {
+                    deleteRecursively(dir.toPath());
+                } catch (final IOException ex) {
+                    // Files may still be in use by a running client. Try again next time.
+                    LogUtil.getLogger().log(Level.WARNING, "Could not delete " + dir, ex);
+                }
+            }
+        }
+    }
+
+    private static void deleteRecursively(final Path path)
+            throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex)
+                    throws IOException {
+                if (ex != null) {
+                    throw ex;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,182 @@
+package net.classicube.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+
+// Picks default JVM settings for the client (heap size and garbage collector, mostly), based on
+// this computer's physical memory, number of cores, and the Java runtime that will run the client
+// (see JavaRuntimeFinder).
+// These are only defaults: whatever the player entered in PreferencesScreen is used instead.
+// Results are computed once, and logged, so that bug reports show what the client was given.
+final class ClientJvmTuning {
+
+    // Java2D flags that the client has always been started with
+    static final String BASE_JAVA_ARGS = "-Dorg.lwjgl.util.Debug=true "
+            + "-Dsun.java2d.noddraw=true "
+            + "-Dsun.awt.noerasebackground=true "
+            + "-Dsun.java2d.d3d=false "
+            + "-Dsun.java2d.opengl=false "
+            + "-Dsun.java2d.pmoffscreen=false";
+
+    // Heap sizes, in megabytes
+    private static final int FALLBACK_HEAP = 800, // when physical memory is unknown
+            MIN_HEAP = 512,
+            MAX_HEAP = 2048,
+            MAX_HEAP_32BIT = 1024, // 32-bit JVMs often can't reserve more than this on Windows
+            MAX_TUNED_HEAP = 4096, // how far ClientGcAdvisor may go, if a session needed it
+            HEAP_GRANULARITY = 16; // same step as the spinner in PreferencesScreen
+
+    // G1 is worth it once there's a spare core for its concurrent work, and enough heap for regions.
+    // String deduplication costs another background thread, so it's only used on bigger machines.
+    private static final int MIN_G1_CORES = 2,
+            MIN_G1_HEAP = 1024,
+            MIN_DEDUP_CORES = 4,
+            MIN_LARGE_PAGES_HEAP = 1024;
+
+    // Short, predictable pauses matter more to a game than throughput.
+    // Pause target is about two frames at 60 FPS.
+    static final String G1_ARGS = "-XX:+UseG1GC -XX:MaxGCPauseMillis=33";
+
+    private static final String THP_SETTINGS_FILE = "/sys/kernel/mm/transparent_hugepage/enabled";
+
+    private static int maxMemory, maxMemoryLimit, cores;
+    private static String javaArgs;
+
+    // Default value for Prefs.getMaxMemory(), in megabytes
+    public static synchronized int getMaxMemory() {
+        init();
+        return maxMemory;
+    }
+
+    // Largest heap (in megabytes) that may be picked automatically, based on a previous session
+    public static synchronized int getMaxMemoryLimit() {
+        init();
+        return maxMemoryLimit;
+    }
+
+    public static synchronized int getCores() {
+        init();
+        return cores;
+    }
+
+    // Default value for Prefs.getJavaArgs()
+    public static synchronized String getJavaArgs() {
+        init();
+        return javaArgs;
+    }
+
+    private static void init() {
+        if (javaArgs != null) {
+            return;
+        }
+        final long physicalMemory = getPhysicalMemory();
+        final JavaRuntime runtime = JavaRuntimeFinder.getClientRuntime();
+        final int javaVersion = runtime.featureVersion;
+        cores = Runtime.getRuntime().availableProcessors();
+        maxMemory = pickHeapSize(physicalMemory, runtime);
+        maxMemoryLimit = pickHeapLimit(physicalMemory, runtime);
+
+        final StringBuilder sb = new StringBuilder(BASE_JAVA_ARGS);
+        if (cores >= MIN_G1_CORES && maxMemory >= MIN_G1_HEAP && javaVersion >= 8) {
+            sb.append(' ').append(G1_ARGS);
+            if (cores >= MIN_DEDUP_CORES && supportsStringDeduplication(runtime)) {
+                sb.append(" -XX:+UseStringDeduplication");
+            }
+        } else if (cores < MIN_G1_CORES) {
+            // On a single core, concurrent collectors only compete with the game for CPU time.
+            sb.append(" -XX:+UseSerialGC");
+        }
+        if (maxMemory >= MIN_LARGE_PAGES_HEAP && javaVersion >= 8 && isTransparentHugePagesOnRequest()) {
+            // Explicit large pages (-XX:+UseLargePages) need an administrator to set them up on
+            // every OS, and the JVM complains when they aren't. Transparent huge pages don't,
+            // but the kernel only hands them out on request when set to "madvise".
+            sb.append(" -XX:+UseTransparentHugePages");
+        }
+        javaArgs = sb.toString();
+
+        LogUtil.getLogger().log(Level.INFO,
+                "Client JVM defaults for {0} MB RAM, {1} cores, Java {2}: -Xmx{3}m {4}",
+                new Object[]{Long.toString(physicalMemory / (1024 * 1024)), Integer.toString(cores),
+                    Integer.toString(javaVersion), Integer.toString(maxMemory), javaArgs});
+    }
+
+    // A quarter of physical memory, between MIN_HEAP and MAX_HEAP, but never more than half.
+    private static int pickHeapSize(final long physicalMemory, final JavaRuntime runtime) {
+        if (physicalMemory <= 0) {
+            return FALLBACK_HEAP;
+        }
+        final long physicalMegabytes = physicalMemory / (1024 * 1024);
+        final int maxHeap = (runtime.is64Bit ? MAX_HEAP : MAX_HEAP_32BIT);
+        long heap = Math.max(physicalMegabytes / 4, MIN_HEAP);
+        heap = Math.min(heap, physicalMegabytes / 2);
+        heap = Math.min(heap, maxHeap);
+        heap -= heap % HEAP_GRANULARITY;
+        return (int) Math.max(heap, HEAP_GRANULARITY * 4);
+    }
+
+    // Half of physical memory, up to MAX_TUNED_HEAP, and never less than the default heap size.
+    private static int pickHeapLimit(final long physicalMemory, final JavaRuntime runtime) {
+        if (physicalMemory <= 0) {
+            return Math.max(maxMemory, MAX_HEAP);
+        }
+        final long physicalMegabytes = physicalMemory / (1024 * 1024);
+        final int maxHeap = (runtime.is64Bit ? MAX_TUNED_HEAP : MAX_HEAP_32BIT);
+        long limit = Math.min(physicalMegabytes / 2, maxHeap);
+        limit -= limit % HEAP_GRANULARITY;
+        return (int) Math.max(limit, maxMemory);
+    }
+
+    // Returns total physical memory in bytes, or 0 if this JVM does not tell.
+    private static long getPhysicalMemory() {
+        try {
+            final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+            if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+                return ((com.sun.management.OperatingSystemMXBean) osBean).getTotalPhysicalMemorySize();
+            }
+        } catch (final Throwable ex) {
+            LogUtil.getLogger().log(Level.FINE, "Could not get physical memory size", ex);
+        }
+        return 0;
+    }
+
+    // Java 8 got -XX:+UseStringDeduplication in update 20.
+    private static boolean supportsStringDeduplication(final JavaRuntime runtime) {
+        if (runtime.featureVersion != 8) {
+            return runtime.featureVersion > 8;
+        }
+        final String version = runtime.version;
+        final int underscore = version.indexOf('_');
+        if (underscore < 0) {
+            return false;
+        }
+        try {
+            final String update = version.substring(underscore + 1).replaceAll("\\D.*$", "");
+            return Integer.parseInt(update) >= 20;
+        } catch (final NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    // True on Linux when transparent huge pages are set to "madvise" (JVM has to ask for them).
+    // With "always", every process already gets them; with "never", asking does nothing.
+    private static boolean isTransparentHugePagesOnRequest() {
+        if (OperatingSystem.detect() != OperatingSystem.NIX) {
+            return false;
+        }
+        final File settingsFile = new File(THP_SETTINGS_FILE);
+        if (!settingsFile.exists()) {
+            return false;
+        }
+        try {
+            final String settings = new String(Files.readAllBytes(settingsFile.toPath()), StandardCharsets.US_ASCII);
+            return settings.contains("[madvise]");
+        } catch (final IOException ex) {
+            return false;
+        }
+    }
+}
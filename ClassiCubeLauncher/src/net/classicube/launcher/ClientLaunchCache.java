@@ -0,0 +1,138 @@
+package net.classicube.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+// Keeps per-install files that cut down the work the JVM does on every client start:
+//  - client.args: an @argfile (Java 9+) with the explicit classpath and native path, instead of a
+//    "libs/*" wildcard that has to be expanded on every launch.
+//  - client.jsa: a class-data-sharing archive (Java 13+) of client and LWJGL classes. It is made
+//    during the first run of an install (-XX:ArchiveClassesAtExit, dumped when the client exits),
+//    and used on every run after that. -Xshare:auto makes the JVM ignore an archive it can't use.
+// Both live in the install directory, so every new client version starts with a fresh archive.
+// client.jsa.info records the JVM and jars that the archive was made from. If any of them
+// change (e.g. a repaired file, or a different Java), the archive is made again.
+final class ClientLaunchCache {
+
+    private static final String ARG_FILE_NAME = "client.args",
+            ARCHIVE_FILE_NAME = "client.jsa",
+            ARCHIVE_INFO_FILE_NAME = "client.jsa.info";
+    private static final int MIN_ARGFILE_JAVA_VERSION = 9,
+            MIN_ARCHIVE_JAVA_VERSION = 13;
+
+    // Returns JVM arguments that set up client's classpath and native path (and CDS archive, if
+    // supported), or null if this Java does not support argfiles.
+    // bootstrapJar (optional) is added to the classpath -- see ParkedClient.
+    public static synchronized List<String> getJvmArgs(final File installDir, final File bootstrapJar)
+            throws IOException {
+        if (installDir == null) {
+            throw new NullPointerException("installDir");
+        }
+        if (JavaRuntimeFinder.getClientRuntime().featureVersion < MIN_ARGFILE_JAVA_VERSION) {
+            return null;
+        }
+        final File argFile = writeArgFile(installDir, bootstrapJar);
+        return Arrays.asList("@" + argFile.getAbsolutePath());
+    }
+
+    // Client's classpath: client.jar, then every jar in "libs" (in a stable order), then bootstrapJar
+    public static List<File> getClassPath(final File installDir, final File bootstrapJar) {
+        if (installDir == null) {
+            throw new NullPointerException("installDir");
+        }
+        final List<File> classPath = new ArrayList<>();
+        classPath.add(new File(installDir, "client.jar"));
+        final File[] libs = new File(installDir, "libs").listFiles();
+        if (libs != null) {
+            Arrays.sort(libs);
+            for (final File lib : libs) {
+                if (lib.isFile() && lib.getName().toLowerCase().endsWith(".jar")) {
+                    classPath.add(lib);
+                }
+            }
+        }
+        if (bootstrapJar != null) {
+            classPath.add(bootstrapJar);
+        }
+        return classPath;
+    }
+
+    // Writes client.args (only if contents changed), and returns it.
+    private static File writeArgFile(final File installDir, final File bootstrapJar)
+            throws IOException {
+        final List<File> classPath = getClassPath(installDir, bootstrapJar);
+        final StringBuilder cp = new StringBuilder();
+        for (final File file : classPath) {
+            if (cp.length() > 0) {
+                cp.append(File.pathSeparatorChar);
+            }
+            cp.append(file.getAbsolutePath());
+        }
+        final List<String> args = new ArrayList<>();
+        args.add("-cp");
+        args.add(cp.toString());
+        args.add("-Djava.library.path=" + new File(installDir, "natives").getCanonicalPath());
+        args.addAll(getArchiveArgs(installDir, classPath));
+
+        final StringBuilder sb = new StringBuilder();
+        for (final String arg : args) {
+            // Quoted, with backslashes and quotes escaped, as the java launcher expects.
+            sb.append('"').append(ClientLauncher.quoter.translate(arg)).append('"').append('\n');
+        }
+        final String contents = sb.toString();
+        final File argFile = new File(installDir, ARG_FILE_NAME);
+        if (!argFile.exists() || !contents.equals(readFile(argFile))) {
+            Files.write(argFile.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        }
+        return argFile;
+    }
+
+    private static List<String> getArchiveArgs(final File installDir, final List<File> classPath)
+            throws IOException {
+        final List<String> args = new ArrayList<>();
+        if (JavaRuntimeFinder.getClientRuntime().featureVersion < MIN_ARCHIVE_JAVA_VERSION) {
+            return args;
+        }
+        final File archiveFile = new File(installDir, ARCHIVE_FILE_NAME);
+        final File infoFile = new File(installDir, ARCHIVE_INFO_FILE_NAME);
+        final String expectedInfo = describe(classPath);
+        if (archiveFile.exists() && infoFile.exists() && expectedInfo.equals(readFile(infoFile))) {
+            args.add("-XX:SharedArchiveFile=" + archiveFile.getAbsolutePath());
+            args.add("-Xshare:auto");
+        } else {
+            // Missing or stale. An existing archive would not be overwritten, so remove it first.
+            LogUtil.getLogger().log(Level.INFO, "Client CDS archive will be made during next launch.");
+            if (archiveFile.exists() && !archiveFile.delete()) {
+                throw new IOException("Could not delete stale " + archiveFile);
+            }
+            Files.write(infoFile.toPath(), expectedInfo.getBytes(StandardCharsets.UTF_8));
+            args.add("-XX:ArchiveClassesAtExit=" + archiveFile.getAbsolutePath());
+        }
+        return args;
+    }
+
+    // Identifies the JVM and jars that an archive belongs to
+    private static String describe(final List<File> classPath) {
+        final StringBuilder sb = new StringBuilder();
+        final JavaRuntime runtime = JavaRuntimeFinder.getClientRuntime();
+        sb.append(runtime.executable.getAbsolutePath()).append('\n')
+                .append(runtime.version).append('\n');
+        for (final File file : classPath) {
+            sb.append(file.getName())
+                    .append(' ').append(file.length())
+                    .append(' ').append(file.lastModified()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String readFile(final File file)
+            throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
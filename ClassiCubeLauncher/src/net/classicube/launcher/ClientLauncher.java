@@ -1,9 +1,11 @@
 package net.classicube.launcher;
 
+import java.awt.Frame;
 import java.io.File;
 import java.io.IOException;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import net.classicube.launcher.gui.DebugWindow;
 import net.classicube.launcher.gui.ErrorScreen;
@@ -13,29 +15,21 @@ import org.apache.commons.lang3.text.translate.LookupTranslator;
 // Handles launching the client process.
 final public class ClientLauncher {
 
-    private static final LookupTranslator quoter
+    static final LookupTranslator quoter
             = new LookupTranslator(new String[][]{{"\"", "\\\""}, {"\\", "\\\\"}});
 
-    private static final String ClassPath = "client.jar" + File.pathSeparatorChar + "libs/*",
-            ClientClassPath = "com.oyasunadev.mcraft.client.core.ClassiCubeStandalone";
+    private static final String ClientClassPath = "com.oyasunadev.mcraft.client.core.ClassiCubeStandalone";
 
     public static void launchClient(final ServerJoinInfo joinInfo) {
         LogUtil.getLogger().info("launchClient");
+        HttpUtil.logConnectionStats();
 
         if (joinInfo != null) {
             SessionManager.getSession().storeResumeInfo(joinInfo);
         }// else if joinInfo==null, then we're launching singleplayer
 
-        final File java = PathUtil.getJavaPath();
-
-        final String nativePath;
-        try {
-            nativePath = new File(PathUtil.getClientDir(), "natives").getCanonicalPath();
-        } catch (final Exception ex) {
-            ErrorScreen.show("Could not launch the game",
-                    "Error finding the LWJGL native library path:<br>" + ex.getMessage(), ex);
-            return;
-        }
+        // Binaries are taken from the current side-by-side install.
+        final File installDir = ClientInstallManager.getCurrentInstallDir();
 
         try {
             String mppass;
@@ -45,14 +39,7 @@ final public class ClientLauncher {
                 mppass = '"' + quoter.translate(joinInfo.pass) + '"';
             }
 
-            final ProcessBuilder processBuilder = new ProcessBuilder(
-                    java.getAbsolutePath(),
-                    "-cp",
-                    ClassPath,
-                    "-Djava.library.path=\"" + quoter.translate(nativePath) + '"',
-                    Prefs.getJavaArgs(),
-                    "-Xmx" + Prefs.getMaxMemory() + "m",
-                    ClientClassPath,
+            final List<String> clientArgs = Arrays.asList(
                     (joinInfo == null ? "none" : joinInfo.address.getHostAddress()),
                     (joinInfo == null ? "0" : Integer.toString(joinInfo.port)),
                     (joinInfo == null ? "none" : '"' + quoter.translate(joinInfo.playerName) + '"'),
@@ -60,6 +47,31 @@ final public class ClientLauncher {
                     SessionManager.getSession().getSkinUrl(),
                     Boolean.toString(Prefs.getFullscreen()));
 
+            if (Prefs.getInProcessClient()) {
+                if (InProcessClient.isSupported()) {
+                    ParkedClient.discard();
+                    InProcessClient.launch(installDir, ClientClassPath, toDirectClientArgs(clientArgs));
+                    return;
+                }
+                LogUtil.getLogger().log(Level.WARNING,
+                        "Client can only run in the launcher's JVM if the launcher is started from {0} (not {1}). "
+                        + "Starting a separate JVM instead.",
+                        new Object[]{PathUtil.getClientDir(), new File("").getAbsoluteFile()});
+            }
+
+            final List<String> jvmCommand;
+            try {
+                jvmCommand = getJvmCommand(installDir);
+            } catch (final Exception ex) {
+                ErrorScreen.show("Could not launch the game",
+                        "Error preparing the client's classpath and native library path:<br>" + ex.getMessage(), ex);
+                return;
+            }
+            final List<String> command = new ArrayList<>(jvmCommand);
+            command.add(ClientClassPath);
+            command.addAll(clientArgs);
+            final ProcessBuilder processBuilder = new ProcessBuilder(command);
+
             processBuilder.directory(PathUtil.getClientDir());
 
             // log the command used to launch client
@@ -70,39 +82,170 @@ final public class ClientLauncher {
             }
             LogUtil.getLogger().log(Level.INFO, cmdLineToLog);
 
-            if (Prefs.getDebugMode()) {
-                processBuilder.redirectErrorStream(true);
-                try {
-                    final Process p = processBuilder.start();
-                    DebugWindow.setWindowTitle("Game Running");
-
-                    // capture output from the client, redirect to DebugWindow
-                    new Thread() {
-                        @Override
-                        public void run() {
-                            try {
-                                Scanner input = new Scanner(p.getInputStream());
-                                while (true) {
-                                    DebugWindow.writeLine(input.nextLine());
-                                }
-                            } catch (NoSuchElementException ex) {
-                                DebugWindow.writeLine("(client closed)");
-                                DebugWindow.setWindowTitle("Client Closed");
-                            }
-                        }
-                    }.start();
-
-                } catch (IOException ex) {
-                    LogUtil.getLogger().log(Level.SEVERE, "Error launching client", ex);
-                }
+            // use the pre-spawned client process, if there is one (and it's still usable)
+            final Process parkedProcess = ParkedClient.take(jvmCommand, toDirectClientArgs(clientArgs));
+
+            // stderr goes into the same stream, so that ClientSupervisor can capture both
+            processBuilder.redirectErrorStream(true);
+            final Process process;
+            if (parkedProcess != null) {
+                process = parkedProcess;
             } else {
-                processBuilder.start();
-                System.exit(0);
+                ClientGcAdvisor.recordSessionStart(0);
+                process = processBuilder.start();
+            }
+            if (Prefs.getDebugMode()) {
+                DebugWindow.setWindowTitle("Game Running");
             }
+            ClientSupervisor.supervise(process, Prefs.getDebugMode());
 
         } catch (final Exception ex) {
             ErrorScreen.show("Could not launch the game",
                     "Error launching the client:<br>" + ex.getMessage(), ex);
         }
     }
+
+    // Pre-spawns a client in background if enabled in preferences, or stops it if disabled.
+    public static void prespawnClient() {
+        ParkedClient.prepareAsync();
+    }
+
+    // True if the client can run inside the launcher's JVM (see InProcessClient).
+    public static boolean canRunInProcess() {
+        return InProcessClient.isSupported();
+    }
+
+    // Starts a parked client process (see ParkedClient). Called off the EDT, once updates are done.
+    static void prepareParkedClient() {
+        if (!Prefs.getPrewarmClient()) {
+            return;
+        }
+        final File installDir = ClientInstallManager.getCurrentInstallDir();
+        try {
+            ParkedClient.start(getJvmCommand(installDir), ClientClassPath,
+                    new File(installDir, "client.jar"));
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not pre-spawn client process", ex);
+        }
+    }
+
+    // Disposes every launcher window (except the debug console), freeing their native resources
+    // and letting their images and components be collected. Used once the client is running.
+    static void releaseLauncherWindows() {
+        for (final Frame frame : Frame.getFrames()) {
+            if (!(frame instanceof DebugWindow)) {
+                frame.dispose();
+            }
+        }
+        System.gc();
+    }
+
+    // Called after updates, to have launch files (see ClientLaunchCache) ready for the next launch.
+    static void refreshLaunchFiles(final File installDir) {
+        try {
+            getJvmArgs(installDir);
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not prepare client launch files", ex);
+        }
+    }
+
+    // Everything up to (not including) client's main class. Same for fresh and parked clients.
+    private static List<String> getJvmCommand(final File installDir)
+            throws IOException {
+        // Previous session's GC log may change memory settings, so it's read before they are.
+        ClientGcAdvisor.analyzePreviousSession();
+        final List<String> command = new ArrayList<>();
+        command.add(PathUtil.getJavaPath().getAbsolutePath());
+        command.addAll(getJvmArgs(installDir));
+        command.addAll(ClientGcAdvisor.getJvmArgs());
+        // Each option has to be its own argument, or the JVM reads them all as one.
+        for (final String arg : Prefs.getJavaArgs().split("\\s+")) {
+            if (!arg.isEmpty()) {
+                command.add(arg);
+            }
+        }
+        command.add("-Xmx" + Prefs.getMaxMemory() + "m");
+        return command;
+    }
+
+    // Classpath and native path go into an @argfile (with a CDS archive) when Java supports it.
+    // Otherwise they are passed directly.
+    private static List<String> getJvmArgs(final File installDir)
+            throws IOException {
+        // ClientBootstrap goes on the classpath of every client while pre-spawning is enabled,
+        // so that fresh and parked clients can share one argfile and CDS archive.
+        File bootstrapJar = null;
+        if (Prefs.getPrewarmClient()) {
+            try {
+                bootstrapJar = ParkedClient.getBootstrapJar();
+            } catch (final IOException ex) {
+                LogUtil.getLogger().log(Level.WARNING, "Could not prepare client bootstrap", ex);
+            }
+        }
+        try {
+            final List<String> cachedArgs = ClientLaunchCache.getJvmArgs(installDir, bootstrapJar);
+            if (cachedArgs != null) {
+                return cachedArgs;
+            }
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not prepare client launch files", ex);
+        }
+        final StringBuilder classPath = new StringBuilder();
+        for (final File file : ClientLaunchCache.getClassPath(installDir, bootstrapJar)) {
+            if (classPath.length() > 0) {
+                classPath.append(File.pathSeparatorChar);
+            }
+            classPath.append(file.getAbsolutePath());
+        }
+        final String nativePath = new File(installDir, "natives").getCanonicalPath();
+        return Arrays.asList(
+                "-cp",
+                classPath.toString(),
+                "-Djava.library.path=\"" + quoter.translate(nativePath) + '"');
+    }
+
+    // A fresh client gets its arguments through the OS, which (on Windows) removes the quotes that
+    // were added above. Parked and in-process clients get them as-is, so the same has to be done.
+    private static List<String> toDirectClientArgs(final List<String> clientArgs) {
+        if (OperatingSystem.detect() != OperatingSystem.WINDOWS) {
+            return clientArgs;
+        }
+        final List<String> parsedArgs = new ArrayList<>();
+        for (final String arg : clientArgs) {
+            parsedArgs.add(parseWindowsArgument(arg));
+        }
+        return parsedArgs;
+    }
+
+    // Microsoft C runtime's rules for one argument: quotes are removed, and backslashes are only
+    // special when they come right before a quote.
+    private static String parseWindowsArgument(final String arg) {
+        final StringBuilder sb = new StringBuilder();
+        int backslashes = 0;
+        for (int i = 0; i < arg.length(); i++) {
+            final char c = arg.charAt(i);
+            if (c == '\\') {
+                backslashes++;
+                continue;
+            }
+            if (c == '"') {
+                appendBackslashes(sb, backslashes / 2);
+                if (backslashes % 2 == 1) {
+                    sb.append('"'); // escaped quote
+                }
+            } else {
+                appendBackslashes(sb, backslashes);
+                sb.append(c);
+            }
+            backslashes = 0;
+        }
+        appendBackslashes(sb, backslashes);
+        return sb.toString();
+    }
+
+    private static void appendBackslashes(final StringBuilder sb, final int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append('\\');
+        }
+    }
 }
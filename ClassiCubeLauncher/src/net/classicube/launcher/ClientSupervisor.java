@@ -0,0 +1,135 @@
+package net.classicube.launcher;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.logging.Level;
+import javax.swing.SwingUtilities;
+import net.classicube.launcher.gui.DebugWindow;
+
+// What's left of the launcher while the client runs. Every launcher window is disposed (except the
+// debug console, in debug mode), and the heap is trimmed, leaving a single thread that copies
+// client's output (stdout and stderr) into client-output.log, and records how the client exited.
+// The log is bounded: once it grows past MAX_LOG_SIZE, it becomes client-output.old.log and a new
+// one is started, so output of the last few sessions is kept without ever using much disk.
+// In normal mode, the launcher exits along with the client. In debug mode, it stays open.
+final class ClientSupervisor {
+
+    private static final String THREAD_NAME = "ClientSupervisor";
+    private static final long MAX_LOG_SIZE = 512 * 1024;
+
+    public static void supervise(final Process process, final boolean debugMode) {
+        if (process == null) {
+            throw new NullPointerException("process");
+        }
+        final long startTime = System.currentTimeMillis();
+        final Thread thread = new Thread(THREAD_NAME) {
+            @Override
+            public void run() {
+                final int exitCode = pumpOutput(process, debugMode);
+                final long seconds = (System.currentTimeMillis() - startTime) / 1000;
+                LogUtil.getLogger().log(Level.INFO, "Client exited with code {0} after {1} s",
+                        new Object[]{Integer.toString(exitCode), Long.toString(seconds)});
+                if (debugMode) {
+                    DebugWindow.writeLine("(client closed)");
+                    DebugWindow.setWindowTitle("Client Closed");
+                } else {
+                    System.exit(0);
+                }
+            }
+        };
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                ClientLauncher.releaseLauncherWindows();
+                thread.start();
+            }
+        });
+    }
+
+    // Copies client's output to the log (and debug console) until the client exits.
+    // Returns client's exit code, or -1 if it could not be determined.
+    private static int pumpOutput(final Process process, final boolean debugMode) {
+        final byte[] ioBuffer = SharedUpdaterCode.takeBuffer();
+        try (final InputStream in = process.getInputStream();
+                final OutputLog log = new OutputLog(new File(PathUtil.getClientDir(), PathUtil.CLIENT_OUTPUT_LOG_FILE_NAME),
+                        new File(PathUtil.getClientDir(), PathUtil.CLIENT_OUTPUT_LOG_OLD_FILE_NAME))) {
+            log.writeLine("==== Client started " + new Date());
+            int len;
+            while ((len = in.read(ioBuffer)) > 0) {
+                log.write(ioBuffer, 0, len);
+                if (debugMode) {
+                    DebugWindow.write(ioBuffer, 0, len);
+                }
+            }
+            final int exitCode = process.waitFor();
+            log.writeLine("==== Client exited with code " + exitCode + " " + new Date());
+            return exitCode;
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Error capturing client output", ex);
+        } catch (final InterruptedException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Interrupted while waiting for client", ex);
+        } finally {
+            if (debugMode) {
+                DebugWindow.finishLine();
+            }
+            SharedUpdaterCode.releaseBuffer(ioBuffer);
+        }
+        return -1;
+    }
+
+    // Append-only log that is rotated once it grows past MAX_LOG_SIZE.
+    private static final class OutputLog implements AutoCloseable {
+
+        private final File file, oldFile;
+        private OutputStream out;
+        private long size;
+
+        OutputLog(final File file, final File oldFile)
+                throws IOException {
+            this.file = file;
+            this.oldFile = oldFile;
+            open();
+        }
+
+        void write(final byte[] buffer, final int offset, final int length)
+                throws IOException {
+            if (size + length > MAX_LOG_SIZE) {
+                out.close();
+                if (oldFile.exists() && !oldFile.delete()) {
+                    throw new IOException("Could not delete " + oldFile);
+                }
+                if (!file.renameTo(oldFile)) {
+                    throw new IOException("Could not rename " + file);
+                }
+                open();
+            }
+            out.write(buffer, offset, length);
+            out.flush();
+            size += length;
+        }
+
+        void writeLine(final String line)
+                throws IOException {
+            final byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+            write(bytes, 0, bytes.length);
+        }
+
+        private void open()
+                throws IOException {
+            out = new BufferedOutputStream(new FileOutputStream(file, true));
+            size = file.length();
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+            out.close();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.grack.nanojson.JsonStringWriter;
 import com.grack.nanojson.JsonWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -14,16 +15,15 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Level;
 import net.classicube.launcher.gui.ErrorScreen;
-import org.apache.commons.lang3.StringUtils;
 
 public class DiagnosticInfoUploader {
 
     public static final String GIST_API_URL = "https://api.github.com/gists";
+    private static final int MAX_LOG_UPLOAD_SIZE = 256 * 1024;
 
     public static String uploadToGist() {
         // gather files for uploading
@@ -31,13 +31,18 @@ public class DiagnosticInfoUploader {
         final String dirData = gatherDirStructure();
         final String clientLogData = readLogFile(PathUtil.getClientDir(), PathUtil.CLIENT_LOG_FILE_NAME);
         final String clientOldLogData = readLogFile(PathUtil.getClientDir(), PathUtil.CLIENT_LOG_OLD_FILE_NAME);
-        final String selfUpdaterLogData = readLogFile(PathUtil.getClientDir(), PathUtil.SELF_UPDATER_LOG_FILE_NAME);
+        final String clientOutputLogData = readLogFile(PathUtil.getClientDir(), PathUtil.CLIENT_OUTPUT_LOG_FILE_NAME);
         final String optionsData = readLogFile(PathUtil.getClientDir(), PathUtil.OPTIONS_FILE_NAME);
         String launcherLogData = null,
-                launcherOldLogData = null;
+                launcherOldLogData = null,
+                selfUpdaterLogData = null,
+                selfUpdaterOldLogData = null;
         try {
             launcherLogData = readLogFile(SharedUpdaterCode.getLauncherDir(), PathUtil.LOG_FILE_NAME);
             launcherOldLogData = readLogFile(SharedUpdaterCode.getLauncherDir(), PathUtil.LOG_OLD_FILE_NAME);
+            // Self-updater keeps its log in the launcher's directory
+            selfUpdaterLogData = readLogFile(SharedUpdaterCode.getLauncherDir(), PathUtil.SELF_UPDATER_LOG_FILE_NAME);
+            selfUpdaterOldLogData = readLogFile(SharedUpdaterCode.getLauncherDir(), PathUtil.SELF_UPDATER_LOG_OLD_FILE_NAME);
         } catch (final IOException ex) {
             // Theoretically this should never happen.
             LogUtil.getLogger().log(Level.SEVERE, "Could not find launcher directory!", ex);
@@ -75,6 +80,11 @@ public class DiagnosticInfoUploader {
                     .value("content", clientOldLogData)
                     .end();
         }
+        if (clientOutputLogData != null) {
+            writer = writer.object(PathUtil.CLIENT_OUTPUT_LOG_FILE_NAME)
+                    .value("content", clientOutputLogData)
+                    .end();
+        }
         if (launcherLogData != null) {
             writer = writer.object(PathUtil.LOG_FILE_NAME)
                     .value("content", launcherLogData)
@@ -90,6 +100,11 @@ public class DiagnosticInfoUploader {
                     .value("content", selfUpdaterLogData)
                     .end();
         }
+        if (selfUpdaterOldLogData != null) {
+            writer = writer.object(PathUtil.SELF_UPDATER_LOG_OLD_FILE_NAME)
+                    .value("content", selfUpdaterOldLogData)
+                    .end();
+        }
         if (optionsData != null) {
             writer = writer.object(PathUtil.OPTIONS_FILE_NAME)
                     .value("content", optionsData)
@@ -172,13 +187,25 @@ public class DiagnosticInfoUploader {
         });
     }
 
-    // Reads contents of given file into a string, if the file exists. Returns null otherwise.
+    // Reads given file into a string, if the file exists. Returns null otherwise.
+    // Only the last MAX_LOG_UPLOAD_SIZE bytes of long files are read (starting at a line break).
     private static String readLogFile(final File dir, final String fileName) {
-        final Path path = Paths.get(dir.getAbsolutePath(), fileName);
-        if (path.toFile().exists()) {
-            try {
-                final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
-                return StringUtils.join(lines, '\n');
+        final File file = new File(dir, fileName);
+        if (file.exists()) {
+            try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                final long skipped = Math.max(0, raf.length() - MAX_LOG_UPLOAD_SIZE);
+                final byte[] tail = new byte[(int) (raf.length() - skipped)];
+                raf.seek(skipped);
+                raf.readFully(tail);
+                if (skipped == 0) {
+                    return new String(tail, StandardCharsets.UTF_8);
+                }
+                int start = 0;
+                while (start < tail.length && tail[start] != '\n') {
+                    start++;
+                }
+                return "(" + (skipped + start) + " bytes omitted)"
+                        + new String(tail, start, tail.length - start, StandardCharsets.UTF_8);
             } catch (final IOException ex) {
                 LogUtil.getLogger().log(Level.SEVERE, "Could not read " + fileName, ex);
             }
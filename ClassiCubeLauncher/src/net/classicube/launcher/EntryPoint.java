@@ -71,10 +71,27 @@ public final class EntryPoint {
         // display the form
         new SignInScreen().setVisible(true);
 
+        // ClassiCubeSelfUpdater records when it started. Only present when started through it.
+        final String selfUpdaterStartTime = System.getProperty("net.classicube.selfupdater.startTime");
+        if (selfUpdaterStartTime != null) {
+            try {
+                final long elapsed = System.currentTimeMillis() - Long.parseLong(selfUpdaterStartTime);
+                // Class data sharing mode is only set when self-updater started us in a new JVM
+                LogUtil.getLogger().log(Level.INFO, "Time to first window: {0} ms (class data sharing: {1})",
+                        new Object[]{elapsed, System.getProperty("net.classicube.launcher.cds", "off")});
+            } catch (final NumberFormatException ex) {
+                LogUtil.getLogger().log(Level.WARNING, "Unexpected self-updater start time: {0}",
+                        selfUpdaterStartTime);
+            }
+        }
+
         // begin the update process
         UpdateTask.getInstance().execute();
 
         // begin looking up our external IP address
         GetExternalIPTask.getInstance().execute();
+
+        // begin looking for Java runtimes that the client could run on
+        JavaRuntimeFinder.findInBackground();
     }
 }
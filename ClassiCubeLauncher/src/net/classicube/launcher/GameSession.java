@@ -1,5 +1,7 @@
 package net.classicube.launcher;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
@@ -143,38 +145,41 @@ public abstract class GameSession {
                 throws Exception {
             LogUtil.getLogger().log(Level.FINE, "GetServerDetailsWorker");
 
-            // Fetch the play page
-            final String playPage = HttpUtil.downloadString(url);
-            if (playPage == null) {
-                return false;
-            }
-
-            // Parse information on the play page
-            final Matcher appletParamMatch = appletParamRegex.matcher(playPage);
-            while (appletParamMatch.find()) {
-                final String name = appletParamMatch.group(1);
-                final String value = appletParamMatch.group(2);
-                switch (name) {
-                    case "username":
-                        this.joinInfo.playerName = value;
-                        account.playerName = value;
-                        break;
-                    case "server":
-                        this.joinInfo.address = InetAddress.getByName(value);
-                        break;
-                    case "port":
-                        this.joinInfo.port = Integer.parseInt(value);
-                        break;
-                    case "mppass":
-                        this.joinInfo.pass = value;
-                        break;
-                    // default: ignore this param
+            // Fetch the play page, and parse applet parameters out of it line by line.
+            // Reading stops once all the needed parameters are found.
+            try (final HttpResponse response = HttpUtil.openGet(url);
+                    final BufferedReader reader = new BufferedReader(response.getReader())) {
+                String line;
+                while (!hasJoinInfo() && (line = reader.readLine()) != null) {
+                    final Matcher appletParamMatch = appletParamRegex.matcher(line);
+                    while (appletParamMatch.find()) {
+                        final String name = appletParamMatch.group(1);
+                        final String value = appletParamMatch.group(2);
+                        switch (name) {
+                            case "username":
+                                this.joinInfo.playerName = value;
+                                account.playerName = value;
+                                break;
+                            case "server":
+                                this.joinInfo.address = InetAddress.getByName(value);
+                                break;
+                            case "port":
+                                this.joinInfo.port = Integer.parseInt(value);
+                                break;
+                            case "mppass":
+                                this.joinInfo.pass = value;
+                                break;
+                            // default: ignore this param
+                        }
+                    }
                 }
+            } catch (final IOException ex) {
+                LogUtil.getLogger().log(Level.SEVERE, "Error while fetching play page " + url, ex);
+                return false;
             }
 
             // Verify that we got everything
-            if (this.joinInfo.playerName == null || this.joinInfo.address == null
-                    || this.joinInfo.port == 0 || this.joinInfo.pass == null) {
+            if (!hasJoinInfo()) {
                 LogUtil.getLogger().log(Level.WARNING, "Incomplete information returned from Minecraft.net");
                 return false;
             }
@@ -184,6 +189,11 @@ public abstract class GameSession {
         public ServerJoinInfo getJoinInfo() {
             return this.joinInfo;
         }
+
+        private boolean hasJoinInfo() {
+            return this.joinInfo.playerName != null && this.joinInfo.address != null
+                    && this.joinInfo.port != 0 && this.joinInfo.pass != null;
+        }
     }
     // =============================================================================================
     //                                                                                        RESUME
@@ -0,0 +1,84 @@
+package net.classicube.launcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.logging.Level;
+
+// An HTTP response whose body is read as it arrives, instead of being collected into a String
+// first (see HttpUtil.openGet/openPost). Body is already decompressed. Text is decoded using the
+// charset from Content-Type (UTF-8 if none is given), so callers can parse it straight off the
+// connection, and stop reading once they've found what they need.
+// Must be closed. If the body was read to the end (or nearly), the connection is kept for reuse.
+final class HttpResponse implements Closeable {
+
+    private final HttpURLConnection connection;
+    private final InputStream body;
+    private final Charset charset;
+
+    HttpResponse(final HttpURLConnection connection, final InputStream body) {
+        if (connection == null) {
+            throw new NullPointerException("connection");
+        }
+        if (body == null) {
+            throw new NullPointerException("body");
+        }
+        this.connection = connection;
+        this.body = body;
+        this.charset = parseCharset(connection.getContentType());
+    }
+
+    public int getResponseCode()
+            throws IOException {
+        return connection.getResponseCode();
+    }
+
+    public String getContentType() {
+        return connection.getContentType();
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    // Raw (but decompressed) bytes of the body
+    public InputStream getInputStream() {
+        return body;
+    }
+
+    // Body as text, decoded using getCharset()
+    public Reader getReader() {
+        return new InputStreamReader(body, charset);
+    }
+
+    @Override
+    public void close()
+            throws IOException {
+        body.close();
+    }
+
+    // Takes "charset" parameter out of a Content-Type value, e.g. "text/html; charset=ISO-8859-1"
+    private static Charset parseCharset(final String contentType) {
+        if (contentType != null) {
+            for (final String param : contentType.split(";")) {
+                final String trimmed = param.trim();
+                if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                    final String name = trimmed.substring(8).replace("\"", "").trim();
+                    try {
+                        return Charset.forName(name);
+                    } catch (final IllegalCharsetNameException | UnsupportedCharsetException ex) {
+                        LogUtil.getLogger().log(Level.WARNING, "Unknown charset in response: {0}", name);
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
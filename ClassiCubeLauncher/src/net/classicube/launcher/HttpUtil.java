@@ -1,20 +1,29 @@
 package net.classicube.launcher;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.lang.reflect.Field;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 final class HttpUtil {
 
     private static final int MaxRedirects = 3;
     private static final String UserAgent = "ClassiCube Launcher";
+    private static final int HTTP_TEMPORARY_REDIRECT = 307;
+    private static final int COMPRESSED_BUFFER_SIZE = 8192;
 
     public static HttpURLConnection makeHttpConnection(final String urlString, final byte[] postData)
             throws MalformedURLException, IOException {
@@ -24,6 +33,9 @@ final class HttpUtil {
         final URL url = new URL(urlString);
         final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setUseCaches(false);
+        // HttpURLConnection's own redirect-following abandons the redirect's connection (without
+        // reading its body), so uploadString follows redirects itself.
+        connection.setInstanceFollowRedirects(false);
         if (postData != null) {
             connection.setRequestMethod("POST");
             connection.setRequestProperty("Accept-Charset", StandardCharsets.UTF_8.name());
@@ -35,34 +47,86 @@ final class HttpUtil {
         }
         connection.setRequestProperty("Referer", urlString);
         connection.setRequestProperty("User-Agent", UserAgent);
+        // Decoded by openResponseStream
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
         return connection;
     }
 
     // Downloads a string using GET.
     // Returns null and logs an error on failure.
     public static String downloadString(final String urlString) {
-        return uploadString(urlString, null, MaxRedirects);
+        return uploadString(urlString, null, MaxRedirects, 0);
+    }
+
+    // Downloads a string using GET, giving up if connecting or reading takes longer than timeout.
+    // Returns null and logs an error on failure.
+    public static String downloadString(final String urlString, final int timeoutMillis) {
+        return uploadString(urlString, null, MaxRedirects, timeoutMillis);
     }
 
     // Uploads a string using POST, then downloads the response.
     // Returns null and logs an error on failure.
     public static String uploadString(final String urlString, final String dataString) {
-        return uploadString(urlString, dataString, MaxRedirects);
+        return uploadString(urlString, dataString, MaxRedirects, 0);
+    }
+
+    // Opens a GET request, following redirects. Throws on failure (including 4xx/5xx responses).
+    public static HttpResponse openGet(final String urlString)
+            throws IOException {
+        return open(urlString, null, MaxRedirects, 0);
+    }
+
+    // Sends given string using POST, and opens the response. Throws on failure.
+    public static HttpResponse openPost(final String urlString, final String dataString)
+            throws IOException {
+        if (dataString == null) {
+            throw new NullPointerException("dataString");
+        }
+        return open(urlString, dataString, MaxRedirects, 0);
+    }
+
+    private static String uploadString(final String urlString, final String dataString,
+            final int followRedirects, final int timeoutMillis) {
+        try (final HttpResponse httpResponse = open(urlString, dataString, followRedirects, timeoutMillis)) {
+            final StringBuilder response = new StringBuilder();
+            try (final BufferedReader rd = new BufferedReader(httpResponse.getReader())) {
+                String line;
+                while ((line = rd.readLine()) != null) {
+                    response.append(line);
+                    response.append('\n');
+                }
+            }
+            return response.toString();
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.SEVERE, "Error while sending request to " + urlString, ex);
+            return null;
+        }
     }
 
-    private static String uploadString(final String urlString, final String dataString, final int followRedirects) {
+    // Connections are not disconnect()ed: once the response is read to the end and its stream is
+    // closed, HttpURLConnection keeps the socket in its keep-alive pool for the next request to the
+    // same host. Sign-in makes several requests in a row, so that saves a handshake (TCP, and TLS
+    // for https) for each one.
+    private static HttpResponse open(final String urlString, final String dataString,
+            final int followRedirects, final int timeoutMillis)
+            throws IOException {
         LogUtil.getLogger().log(Level.FINE, "{0} {1}",
                 new Object[]{dataString == null ? "GET" : "POST", urlString});
         HttpURLConnection connection = null;
+        String redirectUrl = null;
         final byte[] data;
         if (dataString != null) {
-            data = dataString.getBytes();
+            data = dataString.getBytes(StandardCharsets.UTF_8);
         } else {
             data = null;
         }
 
         try {
             connection = HttpUtil.makeHttpConnection(urlString, data);
+            if (timeoutMillis > 0) {
+                connection.setConnectTimeout(timeoutMillis);
+                connection.setReadTimeout(timeoutMillis);
+            }
 
             // Write POST (if needed)
             if (data != null) {
@@ -73,40 +137,287 @@ final class HttpUtil {
 
             // Handle redirects
             final int responseCode = connection.getResponseCode();
+            recordConnection(connection);
             if (responseCode == HttpURLConnection.HTTP_MOVED_PERM
-                    || responseCode == HttpURLConnection.HTTP_MOVED_TEMP) {
+                    || responseCode == HttpURLConnection.HTTP_MOVED_TEMP
+                    || responseCode == HttpURLConnection.HTTP_SEE_OTHER
+                    || responseCode == HTTP_TEMPORARY_REDIRECT) {
                 if (followRedirects > 0) {
-                    final String redirectUrl = connection.getHeaderField("location");
-                    return uploadString(redirectUrl, null, followRedirects - 1);
+                    // Location may be relative
+                    redirectUrl = new URL(connection.getURL(),
+                            connection.getHeaderField("location")).toString();
+                    // Redirect's body goes unused, but reading it lets the connection be reused.
+                    drain(connection.getInputStream());
                 } else {
                     LogUtil.getLogger().log(Level.FINE, "Redirected ({0}) to {1} (not following)",
                             new Object[]{responseCode, urlString});
                 }
             }
 
-            // Read response
-            final StringBuilder response = new StringBuilder();
-            try (final InputStream is = connection.getInputStream()) {
-                try (final InputStreamReader isr = new InputStreamReader(is)) {
-                    try (final BufferedReader rd = new BufferedReader(isr)) {
-                        String line;
-                        while ((line = rd.readLine()) != null) {
-                            response.append(line);
-                            response.append('\n');
-                        }
-                    }
-                }
+            if (redirectUrl == null) {
+                return new HttpResponse(connection, openResponseStream(connection));
             }
-            return response.toString();
 
         } catch (final IOException ex) {
-            LogUtil.getLogger().log(Level.SEVERE, "Error while sending request to " + urlString, ex);
-            return null;
+            if (connection != null) {
+                releaseAfterError(connection);
+            }
+            throw ex;
+        }
+        return open(redirectUrl, null, followRedirects - 1, timeoutMillis);
+    }
 
+    // Reads the rest of given stream (discarding it), then closes it.
+    private static void drain(final InputStream stream)
+            throws IOException {
+        final byte[] ioBuffer = SharedUpdaterCode.takeBuffer();
+        try (final InputStream is = stream) {
+            while (is.read(ioBuffer) > 0) {
+                // discard
+            }
         } finally {
-            if (connection != null) {
-                connection.disconnect();
+            SharedUpdaterCode.releaseBuffer(ioBuffer);
+        }
+    }
+
+    // An error response (4xx/5xx) has its body in the error stream. Reading it keeps the
+    // connection reusable. If there's no response at all, the connection is closed.
+    private static void releaseAfterError(final HttpURLConnection connection) {
+        final InputStream errorStream = connection.getErrorStream();
+        if (errorStream == null) {
+            connection.disconnect();
+            return;
+        }
+        try {
+            drain(errorStream);
+        } catch (final IOException ex) {
+            connection.disconnect();
+        }
+    }
+
+    // =============================================================================================
+    //                                                                                   COMPRESSION
+    // =============================================================================================
+    // Response body of given connection, decompressed if the server used gzip or deflate.
+    // Closing the returned stream records how many bytes came over the wire, and how many
+    // that decoded to (see logConnectionStats).
+    private static InputStream openResponseStream(final HttpURLConnection connection)
+            throws IOException {
+        final CountingInputStream wireStream = new CountingInputStream(connection.getInputStream());
+        String encoding = connection.getContentEncoding();
+        final InputStream bodyStream;
+        if (encoding == null || encoding.isEmpty() || connection.getContentLength() == 0) {
+            encoding = null;
+            bodyStream = wireStream;
+        } else if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            bodyStream = new GZIPInputStream(wireStream, COMPRESSED_BUFFER_SIZE);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            bodyStream = openDeflateStream(wireStream);
+        } else {
+            throw new IOException("Unsupported Content-Encoding: " + encoding);
+        }
+        return new ResponseStream(connection.getURL(), encoding, wireStream, bodyStream);
+    }
+
+    // "deflate" is supposed to be zlib-wrapped (RFC 2616), but some servers send a raw deflate
+    // stream, so the first two bytes are checked for a zlib header.
+    private static InputStream openDeflateStream(final InputStream wireStream)
+            throws IOException {
+        final BufferedInputStream in = new BufferedInputStream(wireStream, COMPRESSED_BUFFER_SIZE);
+        in.mark(2);
+        final int cmf = in.read();
+        final int flg = in.read();
+        in.reset();
+        final boolean zlibWrapped = (cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0);
+        final Inflater inflater = new Inflater(!zlibWrapped);
+        return new InflaterInputStream(in, inflater, COMPRESSED_BUFFER_SIZE) {
+            @Override
+            public void close()
+                    throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // Not done by InflaterInputStream for inflaters that it didn't create
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read()
+                throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length)
+                throws IOException {
+            final int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n)
+                throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    // Decoded response body. Counts decoded bytes, and records the transfer when closed.
+    private static final class ResponseStream extends FilterInputStream {
+
+        private final URL url;
+        private final String encoding;
+        private final CountingInputStream wireStream;
+        private final CountingInputStream bodyStream;
+        private boolean closed;
+
+        ResponseStream(final URL url, final String encoding, final CountingInputStream wireStream,
+                final InputStream bodyStream) {
+            this(url, encoding, wireStream, (bodyStream == wireStream ? wireStream : new CountingInputStream(bodyStream)));
+        }
+
+        private ResponseStream(final URL url, final String encoding, final CountingInputStream wireStream,
+                final CountingInputStream bodyStream) {
+            super(bodyStream);
+            this.url = url;
+            this.encoding = encoding;
+            this.wireStream = wireStream;
+            this.bodyStream = bodyStream;
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            super.close();
+            recordTransfer(url, encoding, wireStream.count, bodyStream.count);
+        }
+    }
+
+    // =============================================================================================
+    //                                                                              CONNECTION REUSE
+    // =============================================================================================
+    // Per-host counts of requests, of requests that were sent over a reused (kept-alive)
+    // connection, and of response bytes (as sent, and after decompression).
+    // Logged by logConnectionStats.
+    private static final Map<String, HostStats> hostStats = new TreeMap<>();
+    private static boolean canCheckReuse = System.getProperty("java.specification.version", "").startsWith("1.");
+
+    private static final class HostStats {
+
+        int requests, reused, reuseUnknown;
+        long wireBytes, bodyBytes;
+    }
+
+    private static HostStats getHostStats(final String host) {
+        HostStats stats = hostStats.get(host);
+        if (stats == null) {
+            stats = new HostStats();
+            hostStats.put(host, stats);
+        }
+        return stats;
+    }
+
+    private static synchronized void recordConnection(final HttpURLConnection connection) {
+        final String host = connection.getURL().getHost();
+        final HostStats stats = getHostStats(host);
+        stats.requests++;
+        final Boolean reused = isReusedConnection(connection);
+        if (reused == null) {
+            stats.reuseUnknown++;
+        } else if (reused) {
+            stats.reused++;
+        }
+        LogUtil.getLogger().log(Level.FINE, "Connection to {0}: {1}",
+                new Object[]{host, (reused == null ? "reuse unknown" : (reused ? "reused" : "new"))});
+    }
+
+    private static synchronized void recordTransfer(final URL url, final String encoding,
+            final long wireBytes, final long bodyBytes) {
+        final HostStats stats = getHostStats(url.getHost());
+        stats.wireBytes += wireBytes;
+        stats.bodyBytes += bodyBytes;
+        LogUtil.getLogger().log(Level.FINE, "Received {0} bytes ({1} bytes {2}) from {3}",
+                new Object[]{Long.toString(bodyBytes), Long.toString(wireBytes),
+                    (encoding == null ? "uncompressed" : encoding), url});
+    }
+
+    // Logs, for each host, how many requests went over a reused connection, and how much
+    // compression saved.
+    public static synchronized void logConnectionStats() {
+        for (final Map.Entry<String, HostStats> entry : hostStats.entrySet()) {
+            final HostStats stats = entry.getValue();
+            final String reuse;
+            if (stats.reuseUnknown == stats.requests) {
+                reuse = "reuse unknown";
+            } else {
+                reuse = stats.reused + " of " + (stats.requests - stats.reuseUnknown) + " reused a connection";
+            }
+            LogUtil.getLogger().log(Level.INFO, "HTTP to {0}: {1} requests ({2}), {3} bytes received as {4}",
+                    new Object[]{entry.getKey(), Integer.toString(stats.requests), reuse,
+                        Long.toString(stats.bodyBytes), Long.toString(stats.wireBytes)});
+        }
+    }
+
+    // Whether the connection was taken from the keep-alive pool. Java has no public API for it, so
+    // this asks HttpURLConnection's internal client. That only works without warnings up to Java 8;
+    // on newer Java (or if anything goes wrong), it returns null (unknown). Only used for stats.
+    private static Boolean isReusedConnection(final HttpURLConnection connection) {
+        if (!canCheckReuse) {
+            return null;
+        }
+        try {
+            Object impl = connection;
+            // https connections wrap a plain HttpURLConnection implementation
+            final Field delegateField = findField(impl.getClass(), "delegate");
+            if (delegateField != null) {
+                impl = delegateField.get(impl);
+            }
+            final Field httpField = findField(impl.getClass(), "http");
+            final Object client = (httpField == null ? null : httpField.get(impl));
+            if (client == null) {
+                return null;
+            }
+            return (Boolean) client.getClass().getMethod("isCachedConnection").invoke(client);
+        } catch (final ReflectiveOperationException | RuntimeException ex) {
+            LogUtil.getLogger().log(Level.FINE, "Cannot tell whether HTTP connections are reused", ex);
+            canCheckReuse = false;
+            return null;
+        }
+    }
+
+    private static Field findField(final Class<?> type, final String name) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                final Field field = c.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (final NoSuchFieldException ex) {
+                // try the superclass
             }
         }
+        return null;
     }
 }
@@ -0,0 +1,127 @@
+package net.classicube.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.logging.Level;
+import javax.swing.SwingUtilities;
+import net.classicube.launcher.gui.ErrorScreen;
+
+// Runs the client inside the launcher's own JVM (opt-in, see Prefs.getInProcessClient), instead of
+// starting a second one. On low-memory computers, that saves a whole JVM's worth of memory, and the
+// JVM startup. Client's jars get their own class loader, separate from the launcher's classes.
+// Natives are found through that loader (findLibrary), so java.library.path does not have to be
+// changed at runtime. Launcher's windows are disposed first, to give their memory to the client.
+// Only settings that a running JVM can take apply: -D options from Java args become system
+// properties. -Xmx, -XX options, and the Java runtime picked by JavaRuntimeFinder don't apply.
+// Client finds its files relative to the working directory, which a running JVM can't change --
+// so this mode is only used if the launcher was started from client's directory (the self-updater
+// does that when it starts the launcher in a new JVM, see ClassDataSharing).
+final class InProcessClient {
+
+    private static final String THREAD_NAME = "Client";
+
+    // True if client can run in this JVM, i.e. the working directory is client's directory.
+    public static boolean isSupported() {
+        try {
+            return new File("").getCanonicalFile().equals(PathUtil.getClientDir().getCanonicalFile());
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not resolve working directory", ex);
+            return false;
+        }
+    }
+
+    public static void launch(final File installDir, final String mainClassName, final List<String> clientArgs)
+            throws ReflectiveOperationException, MalformedURLException {
+        if (installDir == null) {
+            throw new NullPointerException("installDir");
+        }
+        if (mainClassName == null) {
+            throw new NullPointerException("mainClassName");
+        }
+        if (clientArgs == null) {
+            throw new NullPointerException("clientArgs");
+        }
+        final List<File> classPath = ClientLaunchCache.getClassPath(installDir, null);
+        final URL[] urls = new URL[classPath.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = classPath.get(i).toURI().toURL();
+        }
+        final File nativesDir = new File(installDir, "natives");
+        // Parent is the system loader's parent, so that none of launcher's classes are visible.
+        final ClientClassLoader loader = new ClientClassLoader(urls, nativesDir,
+                ClassLoader.getSystemClassLoader().getParent());
+        final Method clientMain = Class.forName(mainClassName, false, loader).getMethod("main", String[].class);
+        applySystemProperties(nativesDir);
+
+        final String[] args = clientArgs.toArray(new String[clientArgs.size()]);
+        final Thread clientThread = new Thread(THREAD_NAME) {
+            @Override
+            public void run() {
+                try {
+                    clientMain.invoke(null, (Object) args);
+                } catch (final InvocationTargetException ex) {
+                    LogUtil.getLogger().log(Level.SEVERE, "Client crashed", ex.getCause());
+                    ErrorScreen.show("Game crashed", ex.getCause().toString(), ex.getCause());
+                } catch (final IllegalAccessException ex) {
+                    LogUtil.getLogger().log(Level.SEVERE, "Could not start client", ex);
+                }
+            }
+        };
+        clientThread.setContextClassLoader(loader);
+
+        // Client should only start once launcher's windows are gone.
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                ClientLauncher.releaseLauncherWindows();
+                LogUtil.getLogger().log(Level.INFO, "Starting client in the launcher's JVM.");
+                clientThread.start();
+            }
+        });
+    }
+
+    // -Dkey=value options from Java args. The rest need a new JVM, so they are only logged.
+    private static void applySystemProperties(final File nativesDir) {
+        // LWJGL and JInput check these before falling back to loadLibrary
+        System.setProperty("org.lwjgl.librarypath", nativesDir.getAbsolutePath());
+        System.setProperty("net.java.games.input.librarypath", nativesDir.getAbsolutePath());
+        for (final String arg : Prefs.getJavaArgs().split("\\s+")) {
+            if (arg.startsWith("-D") && arg.length() > 2) {
+                final int equals = arg.indexOf('=');
+                if (equals < 0) {
+                    System.setProperty(arg.substring(2), "");
+                } else {
+                    System.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+                }
+            } else if (!arg.isEmpty()) {
+                LogUtil.getLogger().log(Level.INFO, "Java argument ignored by in-process client: {0}", arg);
+            }
+        }
+    }
+
+    // Loads client's classes, and LWJGL's natives from the install's "natives" directory.
+    private static final class ClientClassLoader extends URLClassLoader {
+
+        private final File nativesDir;
+
+        ClientClassLoader(final URL[] urls, final File nativesDir, final ClassLoader parent) {
+            super(urls, parent);
+            this.nativesDir = nativesDir;
+        }
+
+        @Override
+        protected String findLibrary(final String libName) {
+            final File library = new File(nativesDir, System.mapLibraryName(libName));
+            if (library.isFile()) {
+                return library.getAbsolutePath();
+            }
+            return super.findLibrary(libName);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package net.classicube.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+// An installed Java runtime (JRE or JDK) that the client could be started with.
+// Properties are probed by running "java -XshowSettings:properties -version" (Java 7+), which
+// prints system properties without running any code of ours. See JavaRuntimeFinder.
+final class JavaRuntime {
+
+    private static final long PROBE_TIMEOUT = 10000, // ms
+            EXIT_POLL_INTERVAL = 20; // ms
+
+    public final File executable;
+    public final String version; // java.version, e.g. "1.8.0_392" or "17.0.9"
+    public final int featureVersion; // 7, 8, 9, ... 17, etc.
+    public final String arch; // os.arch, e.g. "x86" or "amd64"
+    public final boolean is64Bit;
+
+    JavaRuntime(final File executable, final String version, final int featureVersion,
+            final String arch, final boolean is64Bit) {
+        if (executable == null) {
+            throw new NullPointerException("executable");
+        }
+        if (version == null) {
+            throw new NullPointerException("version");
+        }
+        if (arch == null) {
+            throw new NullPointerException("arch");
+        }
+        this.executable = executable;
+        this.version = version;
+        this.featureVersion = featureVersion;
+        this.arch = arch;
+        this.is64Bit = is64Bit;
+    }
+
+    // The JVM that is running the launcher. Needs no probing.
+    public static JavaRuntime getCurrent() {
+        return new JavaRuntime(getExecutable(new File(System.getProperty("java.home"))),
+                System.getProperty("java.version", ""),
+                parseFeatureVersion(System.getProperty("java.specification.version", "0")),
+                System.getProperty("os.arch", ""),
+                is64Bit(System.getProperty("sun.arch.data.model"), System.getProperty("os.arch", "")));
+    }
+
+    // Path to "java" in given Java home directory. It may not exist.
+    public static File getExecutable(final File javaHome) {
+        if (javaHome == null) {
+            throw new NullPointerException("javaHome");
+        }
+        return new File(javaHome, "bin/java");
+    }
+
+    // True if given Java home directory has a java executable.
+    public static boolean exists(final File javaHome) {
+        final String suffix = (OperatingSystem.detect() == OperatingSystem.WINDOWS ? ".exe" : "");
+        final File executable = getExecutable(javaHome);
+        return new File(executable.getPath() + suffix).isFile();
+    }
+
+    // Runs given java executable to find out its version and bitness.
+    // Returns null if it could not be run, or is too old to report its properties.
+    // Output is read on a helper thread, so that a runtime that hangs (or never closes its output)
+    // is killed after PROBE_TIMEOUT instead of blocking runtime discovery.
+    public static JavaRuntime probe(final File executable)
+            throws IOException {
+        if (executable == null) {
+            throw new NullPointerException("executable");
+        }
+        final ProcessBuilder processBuilder = new ProcessBuilder(
+                executable.getAbsolutePath(), "-XshowSettings:properties", "-version");
+        processBuilder.redirectErrorStream(true);
+        final Process process = processBuilder.start();
+        process.getOutputStream().close();
+
+        final PropertyReader reader = new PropertyReader(process.getInputStream());
+        reader.start();
+        try {
+            final long deadline = System.currentTimeMillis() + PROBE_TIMEOUT;
+            reader.join(PROBE_TIMEOUT);
+            if (reader.isAlive() || !waitForExit(process, deadline)) {
+                process.destroy();
+                throw new IOException("Timed out probing " + executable);
+            }
+        } catch (final InterruptedException ex) {
+            process.destroy();
+            throw new IOException("Interrupted while probing " + executable, ex);
+        }
+        if (reader.error != null) {
+            throw reader.error;
+        }
+        if (reader.version == null || reader.specVersion == null || reader.arch == null) {
+            return null;
+        }
+        return new JavaRuntime(executable, reader.version, parseFeatureVersion(reader.specVersion),
+                reader.arch, is64Bit(reader.dataModel, reader.arch));
+    }
+
+    // Process.waitFor(timeout) is Java 8+, so exit code is polled instead.
+    // Returns false if the process is still running at the deadline.
+    private static boolean waitForExit(final Process process, final long deadline)
+            throws InterruptedException {
+        while (true) {
+            try {
+                process.exitValue();
+                return true;
+            } catch (final IllegalThreadStateException ex) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                Thread.sleep(EXIT_POLL_INTERVAL);
+            }
+        }
+    }
+
+    // "1.7" -> 7, "1.8" -> 8, "9" -> 9, "13" -> 13, etc. Returns 0 if unknown.
+    static int parseFeatureVersion(final String specVersion) {
+        try {
+            if (specVersion.startsWith("1.")) {
+                return Integer.parseInt(specVersion.substring(2));
+            }
+            return Integer.parseInt(specVersion);
+        } catch (final NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    // sun.arch.data.model is HotSpot-specific, so os.arch is the fallback.
+    private static boolean is64Bit(final String dataModel, final String arch) {
+        if (dataModel != null && !dataModel.isEmpty() && !"unknown".equals(dataModel)) {
+            return "64".equals(dataModel);
+        }
+        return arch.contains("64");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Java %s (%s, %d-bit) at %s",
+                version, arch, (is64Bit ? 64 : 32), executable.getParentFile().getParent());
+    }
+
+    // Reads probed runtime's output until it ends. Fields are read after join().
+    private static final class PropertyReader extends Thread {
+
+        private final InputStream in;
+        String version, specVersion, dataModel, arch;
+        IOException error;
+
+        PropertyReader(final InputStream in) {
+            super("JavaRuntimeProbe");
+            this.in = in;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int separator = line.indexOf(" = ");
+                    if (separator < 0) {
+                        continue;
+                    }
+                    final String key = line.substring(0, separator).trim();
+                    final String value = line.substring(separator + 3).trim();
+                    switch (key) {
+                        case "java.version":
+                            version = value;
+                            break;
+                        case "java.specification.version":
+                            specVersion = value;
+                            break;
+                        case "sun.arch.data.model":
+                            dataModel = value;
+                            break;
+                        case "os.arch":
+                            arch = value;
+                            break;
+                    }
+                }
+            } catch (final IOException ex) {
+                error = ex;
+            }
+        }
+    }
+}
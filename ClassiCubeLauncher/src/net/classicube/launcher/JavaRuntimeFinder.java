@@ -0,0 +1,298 @@
+package net.classicube.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+// Picks the Java runtime that the client is started with. The launcher itself often runs on an
+// old or 32-bit Java (whatever the browser or installer left behind), which caps the heap and
+// runs slower code, while a newer 64-bit Java sits unused elsewhere on the same computer.
+// Runtimes are looked for in JAVA_HOME, in the usual install locations for each OS, and in
+// directories listed in preferences (Prefs.getJavaSearchPaths). Each one is probed once, and
+// results are cached in the launcher's directory (keyed by the java executable's size and date),
+// so later runs only have to list directories.
+// Preference: 64-bit, then the newest Java. The launcher's own Java is always a candidate.
+// A runtime set in preferences (Prefs.getJavaPath) is used as-is, if it works.
+final class JavaRuntimeFinder {
+
+    private static final String CACHE_FILE_NAME = "java-runtimes.txt";
+    private static final int MIN_JAVA_VERSION = 7;
+    // LWJGL 2 windows are not reliable on Java 9+ under macOS, so newer ones are not picked there.
+    private static final int MAX_MACOS_JAVA_VERSION = 8;
+    // Architectures that the client's LWJGL natives are built for (besides launcher's own)
+    private static final List<String> NATIVE_ARCHS = Arrays.asList("x86", "i386", "i686", "amd64", "x86_64");
+
+    private static JavaRuntime clientRuntime;
+
+    // Java runtime that the client should be started with. Found once per launcher run.
+    // May take a while (seconds) the first time, if runtimes have to be probed.
+    public static synchronized JavaRuntime getClientRuntime() {
+        if (clientRuntime == null) {
+            clientRuntime = findClientRuntime();
+            LogUtil.getLogger().log(Level.INFO, "Client will run on {0}", clientRuntime);
+        }
+        return clientRuntime;
+    }
+
+    // Starts looking for runtimes on a background thread at startup, so that the first caller
+    // (PreferencesScreen, or launching the client -- both on the EDT) finds the result ready.
+    public static void findInBackground() {
+        final Thread thread = new Thread("JavaRuntimeFinder") {
+            @Override
+            public void run() {
+                getClientRuntime();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static JavaRuntime findClientRuntime() {
+        final JavaRuntime current = JavaRuntime.getCurrent();
+        final Map<String, String> cache = loadCache();
+        final int cacheSize = cache.size();
+        try {
+            // Player's choice, if any
+            final String javaPath = Prefs.getJavaPath();
+            if (!javaPath.isEmpty()) {
+                final JavaRuntime chosen = probeCached(cache, toExecutable(new File(javaPath)));
+                if (chosen != null) {
+                    return chosen;
+                }
+                LogUtil.getLogger().log(Level.WARNING,
+                        "Java runtime set in preferences ({0}) does not work; picking one automatically.", javaPath);
+            }
+
+            JavaRuntime best = current;
+            for (final File javaHome : findJavaHomes()) {
+                final File executable = JavaRuntime.getExecutable(javaHome);
+                if (isSameFile(executable, current.executable)) {
+                    continue;
+                }
+                final JavaRuntime candidate = probeCached(cache, executable);
+                if (candidate == null || !isCompatible(candidate, current)) {
+                    continue;
+                }
+                LogUtil.getLogger().log(Level.FINE, "Found {0}", candidate);
+                if (isBetter(candidate, best)) {
+                    best = candidate;
+                }
+            }
+            return best;
+        } finally {
+            if (cache.size() != cacheSize) {
+                storeCache(cache);
+            }
+        }
+    }
+
+    // Prefs.getJavaPath may be either a Java home directory or the java executable itself.
+    private static File toExecutable(final File path) {
+        final File binDir = path.getAbsoluteFile().getParentFile();
+        if (path.isFile() && binDir != null && binDir.getParentFile() != null) {
+            return JavaRuntime.getExecutable(binDir.getParentFile());
+        }
+        return JavaRuntime.getExecutable(path);
+    }
+
+    private static boolean isCompatible(final JavaRuntime candidate, final JavaRuntime current) {
+        if (candidate.featureVersion < MIN_JAVA_VERSION) {
+            return false;
+        }
+        if (OperatingSystem.detect() == OperatingSystem.MACOS && candidate.featureVersion > MAX_MACOS_JAVA_VERSION) {
+            return false;
+        }
+        return candidate.arch.equals(current.arch) || NATIVE_ARCHS.contains(candidate.arch);
+    }
+
+    // 64-bit first (bigger heaps, and the server compiler), then the newest.
+    private static boolean isBetter(final JavaRuntime candidate, final JavaRuntime best) {
+        if (candidate.is64Bit != best.is64Bit) {
+            return candidate.is64Bit;
+        }
+        return candidate.featureVersion > best.featureVersion;
+    }
+
+    // =============================================================================================
+    //                                                                                     DISCOVERY
+    // =============================================================================================
+    private static Set<File> findJavaHomes() {
+        final Set<File> javaHomes = new LinkedHashSet<>();
+        final String javaHomeVar = System.getenv("JAVA_HOME");
+        if (javaHomeVar != null && !javaHomeVar.isEmpty()) {
+            addJavaHome(javaHomes, new File(javaHomeVar));
+        }
+        for (final String searchPath : Prefs.getJavaSearchPaths().split(File.pathSeparator)) {
+            if (!searchPath.trim().isEmpty()) {
+                final File dir = new File(searchPath.trim());
+                addJavaHome(javaHomes, dir);
+                addJavaHomesIn(javaHomes, dir);
+            }
+        }
+        for (final File dir : getStandardLocations()) {
+            addJavaHomesIn(javaHomes, dir);
+        }
+        return javaHomes;
+    }
+
+    // Directories that usually contain one subdirectory per installed Java
+    private static List<File> getStandardLocations() {
+        final List<File> dirs = new ArrayList<>();
+        final String home = System.getProperty("user.home", ".");
+        switch (OperatingSystem.detect()) {
+            case WINDOWS:
+                // A 32-bit JVM sees "Program Files (x86)" as ProgramFiles; ProgramW6432 is the 64-bit one.
+                for (final String var : new String[]{"ProgramW6432", "ProgramFiles", "ProgramFiles(x86)"}) {
+                    final String programFiles = System.getenv(var);
+                    if (programFiles == null) {
+                        continue;
+                    }
+                    for (final String vendor : new String[]{"Java", "Eclipse Adoptium", "AdoptOpenJDK",
+                        "Zulu", "Amazon Corretto", "Microsoft", "BellSoft"}) {
+                        dirs.add(new File(programFiles, vendor));
+                    }
+                }
+                break;
+            case MACOS:
+                dirs.add(new File("/Library/Java/JavaVirtualMachines"));
+                dirs.add(new File(home, "Library/Java/JavaVirtualMachines"));
+                break;
+            case SOLARIS:
+                dirs.add(new File("/usr/jdk"));
+                dirs.add(new File("/usr/java"));
+                break;
+            default:
+                dirs.add(new File("/usr/lib/jvm"));
+                dirs.add(new File("/usr/java"));
+                dirs.add(new File("/opt/java"));
+                dirs.add(new File(home, ".sdkman/candidates/java"));
+                break;
+        }
+        return dirs;
+    }
+
+    private static void addJavaHomesIn(final Set<File> javaHomes, final File dir) {
+        final File[] subdirs = dir.listFiles();
+        if (subdirs == null) {
+            return;
+        }
+        Arrays.sort(subdirs);
+        for (final File subdir : subdirs) {
+            if (subdir.isDirectory()) {
+                addJavaHome(javaHomes, subdir);
+                // macOS bundles: <name>.jdk/Contents/Home
+                addJavaHome(javaHomes, new File(subdir, "Contents/Home"));
+            }
+        }
+    }
+
+    private static void addJavaHome(final Set<File> javaHomes, final File dir) {
+        if (!JavaRuntime.exists(dir)) {
+            return;
+        }
+        try {
+            // Same runtime is often reachable through symlinks (e.g. /usr/lib/jvm/default-java)
+            javaHomes.add(dir.getCanonicalFile());
+        } catch (final IOException ex) {
+            javaHomes.add(dir.getAbsoluteFile());
+        }
+    }
+
+    private static boolean isSameFile(final File a, final File b) {
+        try {
+            return a.getCanonicalFile().equals(b.getCanonicalFile());
+        } catch (final IOException ex) {
+            return a.getAbsoluteFile().equals(b.getAbsoluteFile());
+        }
+    }
+
+    // =============================================================================================
+    //                                                                                 PROBE CACHING
+    // =============================================================================================
+    // Cache lines: <executable> \t <stamp> \t <version> \t <feature version> \t <arch> \t <64-bit>
+    // Runtimes that could not be probed are cached too (with just the stamp), so that they
+    // are not run again on every launch.
+    private static JavaRuntime probeCached(final Map<String, String> cache, final File executable) {
+        final String key = executable.getAbsolutePath();
+        final String stamp = getStamp(executable);
+        final String cached = cache.get(key);
+        if (cached != null && cached.startsWith(stamp + '\t')) {
+            return parseCacheEntry(executable, cached);
+        }
+        JavaRuntime runtime = null;
+        try {
+            runtime = JavaRuntime.probe(executable);
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.FINE, "Could not probe " + executable, ex);
+        }
+        if (runtime == null) {
+            cache.put(key, stamp + '\t');
+        } else {
+            cache.put(key, stamp + '\t' + runtime.version + '\t' + runtime.featureVersion
+                    + '\t' + runtime.arch + '\t' + runtime.is64Bit);
+        }
+        return runtime;
+    }
+
+    // Changes when the runtime is updated in place
+    private static String getStamp(final File executable) {
+        File file = executable;
+        if (!file.exists()) {
+            file = new File(executable.getPath() + ".exe");
+        }
+        return file.length() + "/" + file.lastModified();
+    }
+
+    private static JavaRuntime parseCacheEntry(final File executable, final String entry) {
+        final String[] parts = entry.split("\t");
+        if (parts.length != 5) {
+            return null;
+        }
+        try {
+            return new JavaRuntime(executable, parts[1], Integer.parseInt(parts[2]), parts[3],
+                    Boolean.parseBoolean(parts[4]));
+        } catch (final NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> loadCache() {
+        final Map<String, String> cache = new HashMap<>();
+        try {
+            final File cacheFile = new File(SharedUpdaterCode.getLauncherDir(), CACHE_FILE_NAME);
+            if (cacheFile.exists()) {
+                for (final String line : Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+                    final int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        cache.put(line.substring(0, tab), line.substring(tab + 1));
+                    }
+                }
+            }
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not read " + CACHE_FILE_NAME, ex);
+        }
+        return cache;
+    }
+
+    private static void storeCache(final Map<String, String> cache) {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, String> entry : cache.entrySet()) {
+            sb.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+        try {
+            final File cacheFile = new File(SharedUpdaterCode.getLauncherDir(), CACHE_FILE_NAME);
+            Files.write(cacheFile.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not write " + CACHE_FILE_NAME, ex);
+        }
+    }
+}
@@ -2,10 +2,8 @@ package net.classicube.launcher;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
 import net.classicube.launcher.gui.ErrorScreen;
 
 // Global logging class (to make life easier)
@@ -20,19 +18,22 @@ public final class LogUtil {
         final File logFile = new File(SharedUpdaterCode.getLauncherDir(), PathUtil.LOG_FILE_NAME);
         final File logOldFile = new File(SharedUpdaterCode.getLauncherDir(), PathUtil.LOG_OLD_FILE_NAME);
 
-        // If a logfile already exists, rename it to "launcher.old.log"
-        if (logFile.exists()) {
-            if (logOldFile.exists()) {
-                logOldFile.delete();
-            }
-            logFile.renameTo(logOldFile);
-        }
+        // If a logfile already exists, it becomes "launcher.old.log" (older ones are compressed)
+        SharedUpdaterCode.rotateLog(logger, logFile, logOldFile);
 
-        // Set up log file handler for this session
+        // Set up log file handler for this session. It also echoes to the console, so the
+        // (synchronous) default console handler is not used.
         try {
-            final FileHandler handler = new FileHandler(logFile.getAbsolutePath());
-            handler.setFormatter(new SimpleFormatter());
+            final AsyncLogHandler handler = new AsyncLogHandler(logFile, logOldFile);
             logger.addHandler(handler);
+            logger.setUseParentHandlers(false);
+            // Make sure that queued records are written before the launcher exits
+            Runtime.getRuntime().addShutdownHook(new Thread("LogFlush") {
+                @Override
+                public void run() {
+                    handler.close();
+                }
+            });
         } catch (final IOException | SecurityException ex) {
             ErrorScreen.show("Error creating log file", ex.getMessage(), ex);
             System.exit(2);
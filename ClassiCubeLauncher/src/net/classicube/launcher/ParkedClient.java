@@ -0,0 +1,190 @@
+package net.classicube.launcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+
+// Keeps a client process "parked" while the player is browsing the server list (if enabled in
+// preferences), so that joining a server does not have to wait for JVM startup, class loading,
+// and LWJGL's natives. The parked process runs ClientBootstrap, which gets client's arguments
+// over its standard input when the player clicks [Connect].
+// A parked process is only used if it was started with exactly the same JVM command (java, install
+// directory, Java arguments, memory) that a fresh launch would use. Otherwise it's discarded.
+// When the launcher exits, the parked process sees its standard input close, and exits too.
+final class ParkedClient {
+
+    private static final String BOOTSTRAP_JAR_NAME = "client-bootstrap.jar",
+            BOOTSTRAP_CLASS = "net.classicube.launcher.ClientBootstrap";
+    private static Process process;
+    private static List<String> processJvmCommand;
+    private static long processStartTime; // System.nanoTime()
+
+    // Starts a parked client in the background, unless one is already waiting (with same settings).
+    // Waits for the update check to finish first, so that up-to-date binaries are used.
+    // If disabled in preferences (or the client runs in-process), discards the parked client instead.
+    public static void prepareAsync() {
+        if (!Prefs.getPrewarmClient() || (Prefs.getInProcessClient() && InProcessClient.isSupported())) {
+            discard();
+            return;
+        }
+        final Thread thread = new Thread("ParkedClient") {
+            @Override
+            public void run() {
+                try {
+                    UpdateTask.getInstance().get();
+                    ClientLauncher.prepareParkedClient();
+                } catch (final InterruptedException | ExecutionException ex) {
+                    // Update failed. Launch will report it, no point in preparing anything.
+                    LogUtil.getLogger().log(Level.FINE, "Not pre-spawning client: update did not finish.");
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Starts a parked client with given JVM command, unless a matching one is already waiting.
+    public static synchronized void start(final List<String> jvmCommand, final String clientMainClass,
+            final File clientJar) {
+        if (jvmCommand == null) {
+            throw new NullPointerException("jvmCommand");
+        }
+        if (clientMainClass == null) {
+            throw new NullPointerException("clientMainClass");
+        }
+        if (clientJar == null) {
+            throw new NullPointerException("clientJar");
+        }
+        if (isAlive() && jvmCommand.equals(processJvmCommand)) {
+            return;
+        }
+        discard();
+        final List<String> command = new ArrayList<>(jvmCommand);
+        command.addAll(Arrays.asList(BOOTSTRAP_CLASS, clientMainClass, clientJar.getAbsolutePath()));
+        final ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(PathUtil.getClientDir());
+        processBuilder.redirectErrorStream(true);
+        try {
+            process = processBuilder.start();
+            processStartTime = System.nanoTime();
+            processJvmCommand = new ArrayList<>(jvmCommand);
+            ClientGcAdvisor.recordParkedStart();
+            LogUtil.getLogger().log(Level.INFO, "Pre-spawned client process.");
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not pre-spawn client process", ex);
+        }
+    }
+
+    // Hands client's arguments to the parked process and returns it, if it was started with
+    // given JVM command and is still alive. Returns null otherwise (and discards parked process).
+    public static synchronized Process take(final List<String> jvmCommand, final List<String> clientArgs) {
+        if (jvmCommand == null) {
+            throw new NullPointerException("jvmCommand");
+        }
+        if (clientArgs == null) {
+            throw new NullPointerException("clientArgs");
+        }
+        if (process == null) {
+            return null;
+        }
+        if (!isAlive() || !jvmCommand.equals(processJvmCommand)) {
+            LogUtil.getLogger().log(Level.INFO, "Pre-spawned client is stale or gone; starting a new one.");
+            discard();
+            return null;
+        }
+        final Process parkedProcess = process;
+        process = null;
+        processJvmCommand = null;
+        try {
+            final Writer writer = new OutputStreamWriter(parkedProcess.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(Integer.toString(clientArgs.size()));
+            writer.write('\n');
+            for (final String arg : clientArgs) {
+                writer.write(arg);
+                writer.write('\n');
+            }
+            writer.close();
+            final double parkedSeconds = (System.nanoTime() - processStartTime) / 1e9;
+            ClientGcAdvisor.recordSessionStart(parkedSeconds);
+            LogUtil.getLogger().log(Level.INFO, "Handed off to pre-spawned client process (parked for {0} s).",
+                    String.format("%.1f", parkedSeconds));
+            return parkedProcess;
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Could not hand off to pre-spawned client process", ex);
+            parkedProcess.destroy();
+            return null;
+        }
+    }
+
+    public static synchronized void discard() {
+        if (process != null) {
+            process.destroy();
+            process = null;
+            processJvmCommand = null;
+        }
+    }
+
+    // Java 7 has no Process.isAlive()
+    private static boolean isAlive() {
+        if (process == null) {
+            return false;
+        }
+        try {
+            process.exitValue();
+            return false;
+        } catch (final IllegalThreadStateException ex) {
+            return true;
+        }
+    }
+
+    // Writes ClientBootstrap into its own small jar (in launcher's directory), so that it can go on
+    // client's classpath without the rest of the launcher. Only rewritten if contents changed.
+    public static synchronized File getBootstrapJar()
+            throws IOException {
+        final String classFileName = BOOTSTRAP_CLASS.replace('.', '/') + ".class";
+        final ByteArrayOutputStream jarBytes = new ByteArrayOutputStream();
+        try (final JarOutputStream jarOut = new JarOutputStream(jarBytes)) {
+            final ZipEntry entry = new ZipEntry(classFileName);
+            entry.setTime(0); // keeps jar's contents stable, so that it's not rewritten needlessly
+            jarOut.putNextEntry(entry);
+            try (final InputStream in = ParkedClient.class.getClassLoader().getResourceAsStream(classFileName)) {
+                if (in == null) {
+                    throw new IOException("Could not find " + classFileName);
+                }
+                final byte[] ioBuffer = SharedUpdaterCode.takeBuffer();
+                try {
+                    int len;
+                    while ((len = in.read(ioBuffer)) > 0) {
+                        jarOut.write(ioBuffer, 0, len);
+                    }
+                } finally {
+                    SharedUpdaterCode.releaseBuffer(ioBuffer);
+                }
+            }
+            jarOut.closeEntry();
+        }
+        final byte[] newContents = jarBytes.toByteArray();
+        final File jarFile = new File(SharedUpdaterCode.getLauncherDir(), BOOTSTRAP_JAR_NAME);
+        if (!jarFile.exists() || !Arrays.equals(newContents, Files.readAllBytes(jarFile.toPath()))) {
+            final File tempFile = File.createTempFile(BOOTSTRAP_JAR_NAME, ".tmp", jarFile.getParentFile());
+            try (final OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+                out.write(newContents);
+            }
+            PathUtil.replaceFile(tempFile, jarFile);
+        }
+        return jarFile;
+    }
+}
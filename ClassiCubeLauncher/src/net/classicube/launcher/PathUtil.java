@@ -16,8 +16,13 @@ final class PathUtil {
             LOG_OLD_FILE_NAME = "launcher.old.log",
             CLIENT_LOG_FILE_NAME = "client.log",
             CLIENT_LOG_OLD_FILE_NAME="client.old.log",
+            CLIENT_OUTPUT_LOG_FILE_NAME = "client-output.log",
+            CLIENT_OUTPUT_LOG_OLD_FILE_NAME = "client-output.old.log",
             OPTIONS_FILE_NAME="options.txt",
-            SELF_UPDATER_LOG_FILE_NAME="selfupdater.log";
+            SELF_UPDATER_LOG_FILE_NAME="selfupdater.log",
+            SELF_UPDATER_LOG_OLD_FILE_NAME = "selfupdater.old.log",
+            UPDATE_LOCK_FILE_NAME = "update.lock",
+            UPDATE_DONE_FILE_NAME = "update.done";
     private static File clientPath;
 
     // Find client's directory. If it does not exist, create it.
@@ -31,8 +36,9 @@ final class PathUtil {
         return clientPath;
     }
 
+    // Java that the client runs on. Not necessarily the one running the launcher (see JavaRuntimeFinder).
     public static File getJavaPath() {
-        return new File(System.getProperty("java.home"), "bin/java");
+        return JavaRuntimeFinder.getClientRuntime().executable;
     }
 
     // Safely replace contents of destFile with sourceFile.
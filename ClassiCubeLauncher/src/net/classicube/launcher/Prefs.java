@@ -14,7 +14,13 @@ public final class Prefs {
             keyMaxMemory = "MaxMemory",
             keySelectedGameService = "SelectedGameService",
             keyDebugMode = "DebugMode",
-            keyRememberedExternalIPs = "RememberedExternalIPs";
+            keyPrewarmClient = "PrewarmClient",
+            keyInProcessClient = "InProcessClient",
+            keyClientSettingsTuned = "ClientSettingsTuned",
+            keyJavaPath = "JavaPath",
+            keyJavaSearchPaths = "JavaSearchPaths",
+            keyRememberedExternalIPs = "RememberedExternalIPs",
+            keyLegacyDefaultsMigrated = "LegacyDefaultsMigrated";
 
     // Defaults
     public final static UpdateMode UpdateModeDefault = UpdateMode.NOTIFY;
@@ -22,16 +28,30 @@ public final class Prefs {
             RememberUsersDefault = true,
             RememberPasswordsDefault = true,
             RememberServerDefault = true,
-            DebugModeDefault = false;
-    public final static String JavaArgsDefault = "-Dorg.lwjgl.util.Debug=true "
-            + "-Dsun.java2d.noddraw=true "
-            + "-Dsun.awt.noerasebackground=true "
-            + "-Dsun.java2d.d3d=false "
-            + "-Dsun.java2d.opengl=false "
-            + "-Dsun.java2d.pmoffscreen=false";
-    public final static int MaxMemoryDefault = 800;
+            DebugModeDefault = false,
+            PrewarmClientDefault = false,
+            InProcessClientDefault = false,
+            ClientSettingsTunedDefault = false;
+    public final static String JavaPathDefault = "",
+            JavaSearchPathsDefault = "";
     public final static GameServiceType SelectedGameServiceDefault = GameServiceType.ClassiCubeNetService;
 
+    // Defaults for JavaArgs and MaxMemory depend on the hardware (see ClientJvmTuning).
+    // Older launchers stored their fixed defaults as-is. Those values are removed once (see
+    // migrateLegacyDefaults), so that players who never touched these settings get the new
+    // defaults too -- while a player who picks the same values later keeps them.
+    private final static String LegacyJavaArgsDefault = ClientJvmTuning.BASE_JAVA_ARGS;
+    private final static int LegacyMaxMemoryDefault = 800;
+    private static volatile boolean legacyDefaultsMigrated;
+
+    public static String getJavaArgsDefault() {
+        return ClientJvmTuning.getJavaArgs();
+    }
+
+    public static int getMaxMemoryDefault() {
+        return ClientJvmTuning.getMaxMemory();
+    }
+
     // Getters
     public static UpdateMode getUpdateMode() {
         try {
@@ -58,17 +78,51 @@ public final class Prefs {
     }
 
     public static String getJavaArgs() {
-        return getPrefs().get(keyJavaArgs, JavaArgsDefault);
+        migrateLegacyDefaults();
+        final String val = getPrefs().get(keyJavaArgs, null);
+        if (val == null) {
+            return getJavaArgsDefault();
+        }
+        return val;
     }
 
     public static int getMaxMemory() {
-        return getPrefs().getInt(keyMaxMemory, MaxMemoryDefault);
+        migrateLegacyDefaults();
+        final int val = getPrefs().getInt(keyMaxMemory, 0);
+        if (val <= 0) {
+            return getMaxMemoryDefault();
+        }
+        return val;
     }
 
     public static boolean getDebugMode() {
         return getPrefs().getBoolean(keyDebugMode, DebugModeDefault);
     }
 
+    public static boolean getPrewarmClient() {
+        return getPrefs().getBoolean(keyPrewarmClient, PrewarmClientDefault);
+    }
+
+    public static boolean getInProcessClient() {
+        return getPrefs().getBoolean(keyInProcessClient, InProcessClientDefault);
+    }
+
+    // True if JavaArgs and MaxMemory were last set by the launcher (see ClientGcAdvisor),
+    // rather than by the player.
+    public static boolean getClientSettingsTuned() {
+        return getPrefs().getBoolean(keyClientSettingsTuned, ClientSettingsTunedDefault);
+    }
+
+    // Java home (or java executable) to run the client with. Empty to pick one automatically.
+    public static String getJavaPath() {
+        return getPrefs().get(keyJavaPath, JavaPathDefault);
+    }
+
+    // Extra directories to look for Java runtimes in, separated by File.pathSeparator
+    public static String getJavaSearchPaths() {
+        return getPrefs().get(keyJavaSearchPaths, JavaSearchPathsDefault);
+    }
+
     public static GameServiceType getSelectedGameService() {
         try {
             final String val = getPrefs().get(keySelectedGameService, SelectedGameServiceDefault.name());
@@ -99,23 +153,73 @@ public final class Prefs {
         getPrefs().putBoolean(keyRememberServer, val);
     }
 
+    // Storing the default would pin it, so a value equal to the default is stored as "not set".
     public static void setJavaArgs(final String val) {
-        getPrefs().put(keyJavaArgs, val);
+        migrateLegacyDefaults();
+        if (val.equals(getJavaArgsDefault())) {
+            getPrefs().remove(keyJavaArgs);
+        } else {
+            getPrefs().put(keyJavaArgs, val);
+        }
     }
 
     public static void setMaxMemory(final int val) {
-        getPrefs().putInt(keyMaxMemory, val);
+        migrateLegacyDefaults();
+        if (val == getMaxMemoryDefault()) {
+            getPrefs().remove(keyMaxMemory);
+        } else {
+            getPrefs().putInt(keyMaxMemory, val);
+        }
     }
 
     public static void setDebugMode(final boolean val) {
         getPrefs().putBoolean(keyDebugMode, val);
     }
 
+    public static void setPrewarmClient(final boolean val) {
+        getPrefs().putBoolean(keyPrewarmClient, val);
+    }
+
+    public static void setInProcessClient(final boolean val) {
+        getPrefs().putBoolean(keyInProcessClient, val);
+    }
+
+    public static void setClientSettingsTuned(final boolean val) {
+        getPrefs().putBoolean(keyClientSettingsTuned, val);
+    }
+
+    public static void setJavaPath(final String val) {
+        getPrefs().put(keyJavaPath, val);
+    }
+
+    public static void setJavaSearchPaths(final String val) {
+        getPrefs().put(keyJavaSearchPaths, val);
+    }
+
     public static void setSelectedGameService(final GameServiceType val) {
         getPrefs().put(keySelectedGameService, val.name());
     }
 
     // Etc
+    // Runs once per installation: removes JavaArgs/MaxMemory values that equal the fixed
+    // defaults of older launchers, which stored defaults as if the player had picked them.
+    private static synchronized void migrateLegacyDefaults() {
+        if (legacyDefaultsMigrated) {
+            return;
+        }
+        final Preferences prefs = getPrefs();
+        if (!prefs.getBoolean(keyLegacyDefaultsMigrated, false)) {
+            if (LegacyJavaArgsDefault.equals(prefs.get(keyJavaArgs, null))) {
+                prefs.remove(keyJavaArgs);
+            }
+            if (prefs.getInt(keyMaxMemory, 0) == LegacyMaxMemoryDefault) {
+                prefs.remove(keyMaxMemory);
+            }
+            prefs.putBoolean(keyLegacyDefaultsMigrated, true);
+        }
+        legacyDefaultsMigrated = true;
+    }
+
     private static Preferences getPrefs() {
         return Preferences.userNodeForPackage(Prefs.class);
     }
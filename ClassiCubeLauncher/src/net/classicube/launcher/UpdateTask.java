@@ -1,6 +1,5 @@
 package net.classicube.launcher;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -8,19 +7,34 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.StringWriter;
 import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
@@ -39,7 +53,10 @@ public final class UpdateTask
     // =============================================================================================
     //                                                                    CONSTANTS & INITIALIZATION
     // =============================================================================================
-    private static final int MAX_PARALLEL_DOWNLOADS = 5;
+    private static final int MAX_PARALLEL_DOWNLOADS = 5,
+            MAX_DOWNLOAD_ATTEMPTS = 3,
+            INDEX_FETCH_TIMEOUT = 4000, // ms, before falling back to offline mode
+            RECONCILE_INTERVAL = 60 * 1000; // ms, between connectivity checks in offline mode
     private static final UpdateTask instance = new UpdateTask();
 
     public static UpdateTask getInstance() {
@@ -57,6 +74,7 @@ public final class UpdateTask
     private int activeFileNumber, filesDone, totalFiles;
     private boolean needLzma;
     private boolean updatesApplied;
+    private Exception workerError; // first failure in a DownloadThread, if any
 
     @Override
     protected Boolean doInBackground()
@@ -64,6 +82,29 @@ public final class UpdateTask
         this.digest = MessageDigest.getInstance("SHA1");
         final Logger logger = LogUtil.getLogger();
 
+        // Only one launcher process may update files at a time
+        try (final UpdateLock lock = acquireUpdateLock()) {
+            if (lock.updatedByOtherProcess) {
+                // Another launcher instance just finished updating while we waited.
+                // Reuse its result: only make sure that the files are actually in place.
+                logger.log(Level.INFO, "Updates were applied by another launcher instance.");
+                verifyFiles(listBinaries(ClientInstallManager.getCurrentInstallDir()));
+            } else if (!fetchRemoteIndexes(INDEX_FETCH_TIMEOUT) && canLaunchOffline()) {
+                // Network is down or very slow. Don't make the player wait for it.
+                launchOffline(logger);
+            } else {
+                if (this.versionIndexData == null || this.resourceListData == null) {
+                    // No known-good install to fall back on, so we have to wait for the network.
+                    fetchRemoteIndexes(0);
+                }
+                checkAndApplyUpdates(logger);
+            }
+        }
+        return true;
+    }
+
+    private void checkAndApplyUpdates(final Logger logger)
+            throws Exception {
         // build up file list
         logger.log(Level.INFO, "Checking for updates.");
         files.addAll(pickBinariesToDownload());
@@ -79,6 +120,15 @@ public final class UpdateTask
             this.activeFileNumber = 0;
             this.totalFiles = files.size();
 
+            // Start the biggest jobs first, so that worker threads finish at about the same time.
+            // "lzma.jar" (if needed) has to stay first on the list.
+            Collections.sort(files.subList(needLzma ? 1 : 0, totalFiles), new Comparator<FileToDownload>() {
+                @Override
+                public int compare(final FileToDownload a, final FileToDownload b) {
+                    return Long.compare(b.getEstimatedCost(), a.getEstimatedCost());
+                }
+            });
+
             if (needLzma) {
                 // We need to get lzma.jar before deploying any other files, because some of them
                 // may need to be decompressed. "lzma.jar" will always be the first on the list.
@@ -96,28 +146,135 @@ public final class UpdateTask
             for (int i = 0; i < numThreads; i++) {
                 workerThreads[i].join();
             }
+            // If any file failed, the install is incomplete: don't switch to it, or mark it as done.
+            final Exception error = getWorkerError();
+            if (error != null) {
+                throw error;
+            }
         }
 
         // confirm that all required files have been downloaded and deployed
         verifyFiles(files);
 
+        // switch over to the new client install (if any)
+        if (this.pendingInstallVersion != null) {
+            ClientInstallManager.commit(this.pendingInstallVersion);
+            this.updatesApplied = true;
+        }
+
         if (this.updatesApplied) {
             logger.log(Level.INFO, "Updates applied.");
+            ClientLauncher.refreshLaunchFiles(ClientInstallManager.getCurrentInstallDir());
+        }
+
+        // Only a check against both remote indexes counts as verified state (for offline mode)
+        if (this.versionIndexData != null && this.resourceListData != null) {
+            markUpdateDone();
         }
-        return true;
+    }
+
+    // =============================================================================================
+    //                                                                                  OFFLINE MODE
+    // =============================================================================================
+    // Raw contents of the version index and resource list, or null if they could not be fetched.
+    private volatile String versionIndexData, resourceListData;
+
+    // Fetches whichever remote indexes have not been fetched yet, in parallel. If timeout is non-zero,
+    // gives up on whatever has not arrived by then. Returns true if both indexes are now available.
+    private boolean fetchRemoteIndexes(final int timeoutMillis)
+            throws InterruptedException {
+        if (timeoutMillis <= 0) {
+            if (this.versionIndexData == null) {
+                this.versionIndexData = HttpUtil.downloadString(FILE_INDEX_URL);
+            }
+            if (this.resourceListData == null) {
+                this.resourceListData = HttpUtil.downloadString(RESOURCE_LIST_URL);
+            }
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                final Future<String> versionIndex = (this.versionIndexData == null
+                        ? executor.submit(new IndexFetcher(FILE_INDEX_URL, timeoutMillis)) : null);
+                final Future<String> resourceList = (this.resourceListData == null
+                        ? executor.submit(new IndexFetcher(RESOURCE_LIST_URL, timeoutMillis)) : null);
+                final long deadline = System.currentTimeMillis() + timeoutMillis;
+                if (versionIndex != null) {
+                    this.versionIndexData = getBefore(versionIndex, deadline);
+                }
+                if (resourceList != null) {
+                    this.resourceListData = getBefore(resourceList, deadline);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return (this.versionIndexData != null && this.resourceListData != null);
+    }
+
+    private static String getBefore(final Future<String> future, final long deadline)
+            throws InterruptedException {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException | TimeoutException ex) {
+            future.cancel(true);
+            return null;
+        }
+    }
+
+    // Offline launch is only allowed if an earlier update check fully completed (and was verified),
+    // and the current client install is still in place.
+    private boolean canLaunchOffline()
+            throws IOException {
+        final File doneFile = new File(SharedUpdaterCode.getLauncherDir(), PathUtil.UPDATE_DONE_FILE_NAME);
+        final File installDir = ClientInstallManager.getCurrentInstallDir();
+        return doneFile.exists() && new File(installDir, "client.jar").exists();
+    }
+
+    // Trusts the last verified install, and keeps checking for connectivity in the background.
+    private void launchOffline(final Logger logger) {
+        logger.log(Level.WARNING, "Could not fetch update indexes in time. "
+                + "Starting from last verified install; will check for updates in the background.");
+        try {
+            verifyFiles(listBinaries(ClientInstallManager.getCurrentInstallDir()));
+        } catch (final IOException ex) {
+            throw new RuntimeException("Unable to verify local files.", ex);
+        }
+        final Thread reconcileThread = new ReconcileThread(logger);
+        reconcileThread.setDaemon(true);
+        reconcileThread.start();
     }
 
     private void processOneFile(final FileToDownload file)
             throws InterruptedException, IOException {
-        // step 1: download
-        final File downloadedFile = downloadFile(file);
+        File processedFile = null;
+        for (int attempt = 1; processedFile == null; attempt++) {
+            try {
+                // step 1: download (verified inline, as bytes arrive)
+                final File downloadedFile = downloadFile(file);
 
-        // step 2: unpack
-        final File processedFile = SharedUpdaterCode.processDownload(
-                LogUtil.getLogger(),
-                downloadedFile, file.baseUrl + file.remoteName, file.targetName.getName());
+                // step 2: unpack
+                processedFile = SharedUpdaterCode.processDownload(
+                        LogUtil.getLogger(),
+                        downloadedFile, file.baseUrl + file.remoteName, file.targetName.getName());
+
+                // step 3: verify unpacked contents (only the manifest is re-read)
+                verifyProcessedFile(file, processedFile);
+
+            } catch (final IOException ex) {
+                if (processedFile != null) {
+                    processedFile.delete();
+                    processedFile = null;
+                }
+                if (attempt >= MAX_DOWNLOAD_ATTEMPTS) {
+                    throw ex;
+                }
+                LogUtil.getLogger().log(Level.WARNING,
+                        "Download of {0} failed (attempt {1} of {2}), retrying: {3}",
+                        new Object[]{file.remoteName, attempt, MAX_DOWNLOAD_ATTEMPTS, ex.getMessage()});
+            }
+        }
 
-        // step 3: deploy
+        // step 4: deploy
         deployFile(processedFile, file.targetName);
     }
 
@@ -135,6 +292,17 @@ public final class UpdateTask
         return sb.toString();
     }
 
+    // Keeps the first failure reported by a DownloadThread (rethrown once all workers are done)
+    private synchronized void setWorkerError(final Exception ex) {
+        if (this.workerError == null) {
+            this.workerError = ex;
+        }
+    }
+
+    private synchronized Exception getWorkerError() {
+        return this.workerError;
+    }
+
     // Grabs the next file from the list, and sends a progress report to UpdateScreen.
     // Returns null when there are no more files left to download.
     private synchronized FileToDownload getNextFileSync(boolean fileWasDone) {
@@ -175,6 +343,11 @@ public final class UpdateTask
         final File resDir = new File(PathUtil.getClientDir(), "resources");
         HashMap<String, String> resList = getRemoteResourceList();
 
+        // Getting resource list failed. Abort update.
+        if (resList == null) {
+            return pickedFiles;
+        }
+
         for (Map.Entry<String, String> entry : resList.entrySet()) {
             String resFileName = entry.getKey();
             final File resFile = new File(resDir, resFileName);
@@ -184,19 +357,19 @@ public final class UpdateTask
                 doDownload = true;
             } else {
                 // Make sure that the file contents match.
-                try (InputStream is = new FileInputStream(resFile)) {
-                    String localHash = computeHash(is);
-                    String expectedHash = entry.getValue();
-                    if (!localHash.equals(expectedHash)) {
-                        LogUtil.getLogger().log(Level.WARNING,
-                                "Resource hash mismatch for file {0}! Expected {1}, got {2}. Will re-download.",
-                                new Object[]{resFileName, expectedHash, localHash});
-                        doDownload = true;
-                    }
+                String localHash = computeFileHash(resFile);
+                String expectedHash = entry.getValue();
+                if (!localHash.equals(expectedHash)) {
+                    LogUtil.getLogger().log(Level.WARNING,
+                            "Resource hash mismatch for file {0}! Expected {1}, got {2}. Will re-download.",
+                            new Object[]{resFileName, expectedHash, localHash});
+                    doDownload = true;
                 }
             }
             if (doDownload) {
-                pickedFiles.add(new FileToDownload(RESOURCE_DOWNLOAD_URL, resFileName, resFile));
+                final FileToDownload resDownload = new FileToDownload(RESOURCE_DOWNLOAD_URL, resFileName, resFile);
+                resDownload.expectedFileHash = entry.getValue();
+                pickedFiles.add(resDownload);
             }
         }
         return pickedFiles;
@@ -205,9 +378,11 @@ public final class UpdateTask
     private List<FileToDownload> pickBinariesToDownload()
             throws IOException {
         final List<FileToDownload> filesToDownload = new ArrayList<>();
-        final List<FileToDownload> localFiles = listBinaries();
         final HashMap<String, RemoteFile> remoteFiles = getRemoteIndex();
         final boolean updateExistingFiles = (Prefs.getUpdateMode() != UpdateMode.DISABLED);
+        final File currentInstallDir = ClientInstallManager.getCurrentInstallDir();
+        final File checkedInstallDir = pickClientInstall(remoteFiles, updateExistingFiles, currentInstallDir);
+        final List<FileToDownload> localFiles = listBinaries(checkedInstallDir);
 
         // Getting remote file index failed. Abort update.
         if (remoteFiles == null) {
@@ -255,12 +430,12 @@ public final class UpdateTask
                 // If local file exists, but may need updating
                 if (remoteFile != null) {
                     try {
-                        final String localHash = computeManifestHash(fileToHash);
-                        if (!localHash.equalsIgnoreCase(remoteFile.hash)) {
+                        final String localHash = computeLocalHash(fileToHash, remoteFile);
+                        if (!localHash.equalsIgnoreCase(remoteFile.getExpectedHash())) {
                             // If file contents don't match
                             LogUtil.getLogger().log(Level.INFO,
                                     "Will download {0}: contents don''t match ({1} vs {2})",
-                                    new Object[]{fileToHash.getName(), localHash, remoteFile.hash});
+                                    new Object[]{fileToHash.getName(), localHash, remoteFile.getExpectedHash()});
                             download = true;
                         }
                     } catch (final IOException ex) {
@@ -289,20 +464,116 @@ public final class UpdateTask
                     String errMsg = String.format("Required file \"%s%s\" cannot be found.",
                             localFile.baseUrl, localFile.remoteName);
                     throw new RuntimeException(errMsg);
+                } else {
+                    localFile.expectedLength = remoteFile.length;
+                    localFile.expectedManifestHash = remoteFile.hash;
+                    localFile.expectedFingerprint = remoteFile.fingerprint;
+                    localFile.expectedFileHash = remoteFile.fileHash;
+                    localFile.expectedUnpackedLength = remoteFile.unpackedLength;
                 }
                 filesToDownload.add(localFile);
             }
         }
+
+        if (this.pendingInstallVersion != null) {
+            return retargetToNewInstall(filesToDownload, currentInstallDir);
+        }
         return filesToDownload;
     }
 
+    // =============================================================================================
+    //                                                                      SIDE-BY-SIDE INSTALLS
+    // =============================================================================================
+    // Version ID of the client install that is being put together, or null if updates are
+    // deployed to the current install directly (no new version, or updates are disabled).
+    private String pendingInstallVersion;
+
+    // Decides which client install directory local binaries should be checked against.
+    private File pickClientInstall(final HashMap<String, RemoteFile> remoteFiles,
+            final boolean updateExistingFiles, final File currentInstallDir) {
+        if (remoteFiles == null || !updateExistingFiles) {
+            // Without a version index (or with updates disabled), only repair what we have.
+            return currentInstallDir;
+        }
+        final String newVersion = computeInstallVersion(remoteFiles);
+        if (newVersion.equals(ClientInstallManager.getCurrentVersion())) {
+            return currentInstallDir;
+        }
+        this.pendingInstallVersion = newVersion;
+        final File newInstallDir = ClientInstallManager.getInstallDir(newVersion);
+        if (newInstallDir.isDirectory()) {
+            // We already have (some of) this version, e.g. after a rollback. Check it directly.
+            LogUtil.getLogger().log(Level.INFO, "Found existing client install {0}", newVersion);
+            return newInstallDir;
+        }
+        LogUtil.getLogger().log(Level.INFO, "New client install: {0}", newVersion);
+        return currentInstallDir;
+    }
+
+    // Version ID of a client install is derived from hashes of all client binaries.
+    private String computeInstallVersion(final HashMap<String, RemoteFile> remoteFiles) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String[] binary : CLIENT_BINARIES) {
+            appendRemoteHash(sb, remoteFiles, binary[0]);
+        }
+        appendRemoteHash(sb, remoteFiles, getNativesOsName() + "_natives.jar");
+        digest.reset();
+        final byte[] hashBytes = digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return hashToString(hashBytes).substring(0, 12);
+    }
+
+    private static void appendRemoteHash(final StringBuilder sb,
+            final HashMap<String, RemoteFile> remoteFiles, final String remoteName) {
+        final RemoteFile remoteFile = remoteFiles.get(remoteName.toLowerCase());
+        sb.append(remoteName).append(':')
+                .append(remoteFile == null ? "?" : remoteFile.hash).append('\n');
+    }
+
+    // Sets up the new install directory (linking unchanged files from the current install),
+    // and points all client binaries at it.
+    private List<FileToDownload> retargetToNewInstall(final List<FileToDownload> filesToDownload,
+            final File currentInstallDir)
+            throws IOException {
+        final Set<String> pathsToDownload = new HashSet<>();
+        for (final FileToDownload file : filesToDownload) {
+            if (file.installPath != null) {
+                pathsToDownload.add(file.installPath);
+            }
+        }
+        final File newInstallDir = ClientInstallManager.prepareInstall(
+                this.pendingInstallVersion, currentInstallDir, pathsToDownload);
+
+        final List<FileToDownload> retargetedFiles = new ArrayList<>();
+        for (final FileToDownload file : filesToDownload) {
+            if (file == nativesFile) {
+                continue; // handled below
+            }
+            retargetedFiles.add(file.installPath == null ? file : file.retarget(newInstallDir));
+        }
+        final FileToDownload oldNativesFile = nativesFile;
+        nativesFile = nativesFile.retarget(newInstallDir);
+        if (filesToDownload.contains(oldNativesFile)) {
+            retargetedFiles.add(nativesFile);
+        }
+        return retargetedFiles;
+    }
+
+    // =============================================================================================
+    //                                                                                      BINARIES
+    // =============================================================================================
+    // Remote names and install paths of client's binaries (except for natives)
+    private static final String[][] CLIENT_BINARIES = {
+        {"client.jar.pack.lzma", "client.jar"},
+        {"lwjgl.jar.pack.lzma", "libs/lwjgl.jar"},
+        {"lwjgl_util.jar.pack.lzma", "libs/lwjgl_util.jar"},
+        {"jinput.jar.pack.lzma", "libs/jinput.jar"}
+    };
     private FileToDownload lzmaJarFile, launcherJarFile, nativesFile;
 
-    private List<FileToDownload> listBinaries()
+    private List<FileToDownload> listBinaries(final File installDir)
             throws IOException {
         final List<FileToDownload> binaryFiles = new ArrayList<>();
 
-        final File clientDir = PathUtil.getClientDir();
         final File launcherDir = SharedUpdaterCode.getLauncherDir();
 
         lzmaJarFile = new FileToDownload(SharedUpdaterCode.BASE_URL, "lzma.jar",
@@ -314,17 +585,12 @@ public final class UpdateTask
                 new File(launcherDir, SharedUpdaterCode.LAUNCHER_NEW_JAR_NAME));
         binaryFiles.add(launcherJarFile);
 
-        binaryFiles.add(new FileToDownload(SharedUpdaterCode.BASE_URL, "client.jar.pack.lzma",
-                new File(clientDir, "client.jar")));
-
-        binaryFiles.add(new FileToDownload(SharedUpdaterCode.BASE_URL, "lwjgl.jar.pack.lzma",
-                new File(clientDir, "libs/lwjgl.jar")));
-        binaryFiles.add(new FileToDownload(SharedUpdaterCode.BASE_URL, "lwjgl_util.jar.pack.lzma",
-                new File(clientDir, "libs/lwjgl_util.jar")));
-        binaryFiles.add(new FileToDownload(SharedUpdaterCode.BASE_URL, "jinput.jar.pack.lzma",
-                new File(clientDir, "libs/jinput.jar")));
+        for (final String[] binary : CLIENT_BINARIES) {
+            binaryFiles.add(new FileToDownload(SharedUpdaterCode.BASE_URL, binary[0],
+                    installDir, binary[1]));
+        }
 
-        nativesFile = pickNativeDownload();
+        nativesFile = pickNativeDownload(installDir);
         binaryFiles.add(nativesFile);
 
         return binaryFiles;
@@ -332,7 +598,7 @@ public final class UpdateTask
 
     // get a list of binaries available from CC.net
     private HashMap<String, RemoteFile> getRemoteIndex() {
-        final String hashIndex = HttpUtil.downloadString(FILE_INDEX_URL);
+        final String hashIndex = this.versionIndexData;
         final HashMap<String, RemoteFile> remoteFiles = new HashMap<>();
 
         // if getting the list failed, don't panic. Abort update instead.
@@ -351,7 +617,37 @@ public final class UpdateTask
             final String[] components = line.split(" ");
             final RemoteFile file = new RemoteFile();
             file.name = components[0];
+            try {
+                file.length = Long.parseLong(components[1]);
+            } catch (final NumberFormatException ex) {
+                file.length = -1;
+            }
             file.hash = components[2].toLowerCase();
+            if (components.length > 3) {
+                // optional 4th field: whole-jar fingerprint (see JarFingerprint)
+                file.fingerprint = components[3].toLowerCase();
+            }
+            // optional key=value fields, written by ClassiCubePublisher
+            for (int i = 4; i < components.length; i++) {
+                final String[] field = components[i].split("=", 2);
+                if (field.length != 2) {
+                    continue;
+                }
+                switch (field[0]) {
+                    case "sha1":
+                        file.fileHash = field[1].toLowerCase();
+                        break;
+                    case "usize":
+                        try {
+                            file.unpackedLength = Long.parseLong(field[1]);
+                        } catch (final NumberFormatException ex) {
+                            file.unpackedLength = -1;
+                        }
+                        break;
+                    default:
+                        break; // not (yet) used by the launcher
+                }
+            }
             remoteFiles.put(file.name.toLowerCase(), file);
         }
         return remoteFiles;
@@ -360,7 +656,7 @@ public final class UpdateTask
     // Get a list of resource files to download (from MinecraftResources site).
     // Returns a map with filenames for keys, and expected SHA1 hashes for values.
     private HashMap<String, String> getRemoteResourceList() {
-        final String hashIndex = HttpUtil.downloadString(RESOURCE_LIST_URL);
+        final String hashIndex = this.resourceListData;
         final HashMap<String, String> remoteFiles = new HashMap<>();
 
         // if getting the list failed, don't panic. Abort update instead.
@@ -376,7 +672,16 @@ public final class UpdateTask
         return remoteFiles;
     }
 
-    private String computeManifestHash(final File clientJar)
+    // Uses the whole-jar fingerprint if version index provides one, and manifest hash otherwise.
+    private String computeLocalHash(final File jarFile, final RemoteFile remoteFile)
+            throws IOException {
+        if (remoteFile.fingerprint != null) {
+            return JarFingerprint.compute(jarFile);
+        }
+        return computeManifestHash(jarFile, this.digest);
+    }
+
+    private static String computeManifestHash(final File clientJar, final MessageDigest digest)
             throws FileNotFoundException, IOException {
         if (clientJar == null) {
             throw new NullPointerException("clientJar");
@@ -387,21 +692,42 @@ public final class UpdateTask
                 return "<none>";
             }
             try (final InputStream is = zipFile.getInputStream(manifest)) {
-                return computeHash(is);
+                return computeHash(is, digest);
+            }
+        }
+    }
+
+    // Hashes a whole file through a pooled direct buffer, without going through the Java heap.
+    private String computeFileHash(final File file)
+            throws FileNotFoundException, IOException {
+        final ByteBuffer ioBuffer = SharedUpdaterCode.takeDirectBuffer();
+        try (final FileChannel channel = new FileInputStream(file).getChannel()) {
+            while (channel.read(ioBuffer) != -1) {
+                ioBuffer.flip();
+                digest.update(ioBuffer);
+                ioBuffer.clear();
             }
+        } finally {
+            SharedUpdaterCode.releaseDirectBuffer(ioBuffer);
         }
+        return hashToString(digest.digest());
     }
 
-    private String computeHash(InputStream is)
+    private static String computeHash(InputStream is, final MessageDigest digest)
             throws FileNotFoundException, IOException {
-        final byte[] ioBuffer = new byte[64 * 1024];
+        final byte[] ioBuffer = SharedUpdaterCode.takeBuffer();
         try (final DigestInputStream dis = new DigestInputStream(is, digest)) {
             while (dis.read(ioBuffer) != -1) {
                 // DigestInputStream is doing its job, we just need to read through it.
             }
+        } finally {
+            SharedUpdaterCode.releaseBuffer(ioBuffer);
         }
-        final byte[] localHashBytes = digest.digest();
-        final String hashString = new BigInteger(1, localHashBytes).toString(16);
+        return hashToString(digest.digest());
+    }
+
+    private static String hashToString(final byte[] hashBytes) {
+        final String hashString = new BigInteger(1, hashBytes).toString(16);
         return padLeft(hashString, '0', 40);
     }
 
@@ -417,7 +743,14 @@ public final class UpdateTask
         return sb.toString();
     }
 
-    private static FileToDownload pickNativeDownload() {
+    private static FileToDownload pickNativeDownload(final File installDir) {
+        final String osName = getNativesOsName();
+        final String remoteName = osName + "_natives.jar";
+        return new FileToDownload(SharedUpdaterCode.BASE_URL, remoteName,
+                installDir, "natives/" + osName + "_natives.jar");
+    }
+
+    private static String getNativesOsName() {
         final String osName;
         switch (OperatingSystem.detect()) {
             case WINDOWS:
@@ -435,12 +768,11 @@ public final class UpdateTask
             default:
                 throw new IllegalArgumentException();
         }
-        final String remoteName = osName + "_natives.jar";
-        final File localPath = new File(PathUtil.getClientDir(),
-                "natives/" + osName + "_natives.jar");
-        return new FileToDownload(SharedUpdaterCode.BASE_URL, remoteName, localPath);
+        return osName;
     }
 
+    // Downloads given file to a temporary location. The stream is hashed as it is written out,
+    // so that a corrupted or truncated transfer is detected without a second pass over the file.
     private File downloadFile(final FileToDownload file)
             throws MalformedURLException, FileNotFoundException, IOException, InterruptedException {
         if (file == null) {
@@ -448,15 +780,74 @@ public final class UpdateTask
         }
         final File tempFile = File.createTempFile(file.localName.getName(), ".downloaded");
         final URL website = new URL(file.baseUrl + file.remoteName);
+        final MessageDigest fileDigest = createDigest();
+        long bytesWritten = 0;
 
-        try (ReadableByteChannel rbc = Channels.newChannel(website.openStream())) {
+        try (DigestInputStream dis = new DigestInputStream(website.openStream(), fileDigest)) {
             try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-                fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+                final byte[] ioBuffer = SharedUpdaterCode.takeBuffer();
+                try {
+                    int len;
+                    while ((len = dis.read(ioBuffer)) != -1) {
+                        fos.write(ioBuffer, 0, len);
+                        bytesWritten += len;
+                    }
+                } finally {
+                    SharedUpdaterCode.releaseBuffer(ioBuffer);
+                }
+            }
+        } catch (final IOException ex) {
+            tempFile.delete();
+            throw ex;
+        }
+
+        // Compare what we got against the reslist/version index, before anything gets deployed
+        if (file.expectedLength > 0 && bytesWritten != file.expectedLength) {
+            tempFile.delete();
+            throw new IOException(String.format("Size mismatch for %s: expected %d bytes, got %d",
+                    file.remoteName, file.expectedLength, bytesWritten));
+        }
+        if (file.expectedFileHash != null) {
+            final String actualHash = hashToString(fileDigest.digest());
+            if (!actualHash.equalsIgnoreCase(file.expectedFileHash)) {
+                tempFile.delete();
+                throw new IOException(String.format("Hash mismatch for %s: expected %s, got %s",
+                        file.remoteName, file.expectedFileHash, actualHash));
             }
         }
         return tempFile;
     }
 
+    // Makes sure that an unpacked binary matches the version index, before it is deployed.
+    private void verifyProcessedFile(final FileToDownload file, final File processedFile)
+            throws IOException {
+        if (file.expectedFingerprint != null) {
+            final String actualFingerprint = JarFingerprint.compute(processedFile);
+            if (!actualFingerprint.equals(file.expectedFingerprint)) {
+                throw new IOException(String.format("Fingerprint mismatch for %s: expected %s, got %s",
+                        file.remoteName, file.expectedFingerprint, actualFingerprint));
+            }
+            return;
+        }
+        if (file.expectedManifestHash == null) {
+            return;
+        }
+        final String actualHash = computeManifestHash(processedFile, createDigest());
+        if (!actualHash.equalsIgnoreCase(file.expectedManifestHash)) {
+            throw new IOException(String.format("Manifest hash mismatch for %s: expected %s, got %s",
+                    file.remoteName, file.expectedManifestHash, actualHash));
+        }
+    }
+
+    private static MessageDigest createDigest()
+            throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA1");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IOException("SHA1 digest is not available", ex);
+        }
+    }
+
     // =============================================================================================
     //                                                                      POST-DOWNLOAD PROCESSING
     // =============================================================================================
@@ -532,21 +923,22 @@ public final class UpdateTask
 
     // Calculates the CRC32 checksum of a given file
     public static long computeCRC32(final File file) throws IOException {
+        final byte[] ioBuffer = SharedUpdaterCode.takeBuffer();
         try (final FileInputStream fis = new FileInputStream(file)) {
-            try (final InputStream inputStream = new BufferedInputStream(fis)) {
-                final CRC32 crc = new CRC32();
-                int cnt;
-                while ((cnt = inputStream.read()) != -1) {
-                    crc.update(cnt);
-                }
-                return crc.getValue();
+            final CRC32 crc = new CRC32();
+            int len;
+            while ((len = fis.read(ioBuffer)) != -1) {
+                crc.update(ioBuffer, 0, len);
             }
+            return crc.getValue();
+        } finally {
+            SharedUpdaterCode.releaseBuffer(ioBuffer);
         }
     }
 
     // Finds the folder that contains LWJGL natives. If it does not exist, it's created.
     private File getNativesFolder() throws IOException {
-        final File nativeFolder = new File(PathUtil.getClientDir(), "natives");
+        final File nativeFolder = nativesFile.targetName.getParentFile();
 
         if (!nativeFolder.exists() && !nativeFolder.mkdirs()) {
             throw new IOException("Unable to make directory " + nativeFolder);
@@ -558,7 +950,9 @@ public final class UpdateTask
     // Extracts a file from given .jar archive
     private void extractNativeFile(final JarFile jarFile, final JarEntry entry, final File destination)
             throws IOException {
-        final byte[] buffer = new byte[65536];
+        // Destination may be hardlinked from another client install. Unlink it before writing.
+        Files.deleteIfExists(destination.toPath());
+        final byte[] buffer = SharedUpdaterCode.takeBuffer();
         try (final InputStream in = jarFile.getInputStream(entry)) {
             try (final FileOutputStream out = new FileOutputStream(destination)) {
                 int bufferSize;
@@ -566,6 +960,8 @@ public final class UpdateTask
                     out.write(buffer, 0, bufferSize);
                 }
             }
+        } finally {
+            SharedUpdaterCode.releaseBuffer(buffer);
         }
     }
 
@@ -588,6 +984,51 @@ public final class UpdateTask
         }
     }
 
+    // =============================================================================================
+    //                                                                       CROSS-PROCESS LOCKING
+    // =============================================================================================
+    // Locks the launcher directory against concurrent updates by other launcher processes.
+    // If another process holds the lock, blocks until it is released.
+    private UpdateLock acquireUpdateLock()
+            throws IOException {
+        final File launcherDir = SharedUpdaterCode.getLauncherDir();
+        final File lockFile = new File(launcherDir, PathUtil.UPDATE_LOCK_FILE_NAME);
+        final File doneFile = new File(launcherDir, PathUtil.UPDATE_DONE_FILE_NAME);
+        final FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+        try {
+            FileLock lock = channel.tryLock();
+            boolean updatedByOtherProcess = false;
+            if (lock == null) {
+                LogUtil.getLogger().log(Level.INFO,
+                        "Another launcher instance is updating. Waiting for it to finish.");
+                this.publish(new ProgressUpdate("Waiting for another launcher to finish updating...", -1));
+                final long waitStartTime = System.currentTimeMillis();
+                lock = channel.lock();
+                // If the other process finished an update since we started waiting, its
+                // result can be reused. Allow for coarse (1-2 second) filesystem timestamps.
+                updatedByOtherProcess = doneFile.exists()
+                        && doneFile.lastModified() >= waitStartTime - 2000;
+            }
+            return new UpdateLock(channel, lock, updatedByOtherProcess);
+        } catch (final IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    // Records that an update check completed successfully, for other waiting launcher processes.
+    private void markUpdateDone() {
+        final File doneFile;
+        try {
+            doneFile = new File(SharedUpdaterCode.getLauncherDir(), PathUtil.UPDATE_DONE_FILE_NAME);
+            if (!doneFile.createNewFile() && !doneFile.setLastModified(System.currentTimeMillis())) {
+                LogUtil.getLogger().log(Level.WARNING, "Could not update {0}", doneFile);
+            }
+        } catch (final IOException ex) {
+            LogUtil.getLogger().log(Level.WARNING, "Error marking update as done", ex);
+        }
+    }
+
     // =============================================================================================
     //                                                                            PROGRESS REPORTING
     // =============================================================================================
@@ -658,23 +1099,141 @@ public final class UpdateTask
         public final String remoteName;
         public final File localName;
         public final File targetName;
+        // expected values, from reslist or version index (if known)
+        public long expectedLength = -1;
+        public String expectedFileHash;
+        public String expectedManifestHash;
+        public String expectedFingerprint;
+        public long expectedUnpackedLength = -1;
 
         public FileToDownload(final String baseUrl, final String remoteName, final File localName) {
             this(baseUrl, remoteName, localName, localName);
         }
 
+        // path relative to client install directory (null for launcher's own files)
+        public final String installPath;
+
         public FileToDownload(final String baseUrl, final String remoteName, final File localName, final File targetName) {
             this.baseUrl = baseUrl;
             this.remoteName = remoteName;
             this.localName = localName;
             this.targetName = targetName;
+            this.installPath = null;
+        }
+
+        public FileToDownload(final String baseUrl, final String remoteName, final File installDir, final String installPath) {
+            this.baseUrl = baseUrl;
+            this.remoteName = remoteName;
+            this.localName = new File(installDir, installPath);
+            this.targetName = this.localName;
+            this.installPath = installPath;
+        }
+
+        // Rough amount of work needed to download and unpack this file, for scheduling.
+        public long getEstimatedCost() {
+            return Math.max(0, expectedLength) + Math.max(0, expectedUnpackedLength);
+        }
+
+        // Makes a copy of this file entry, pointed at a different client install directory.
+        public FileToDownload retarget(final File installDir) {
+            final FileToDownload copy = new FileToDownload(baseUrl, remoteName, installDir, installPath);
+            copy.expectedLength = expectedLength;
+            copy.expectedFileHash = expectedFileHash;
+            copy.expectedManifestHash = expectedManifestHash;
+            copy.expectedFingerprint = expectedFingerprint;
+            copy.expectedUnpackedLength = expectedUnpackedLength;
+            return copy;
+        }
+    }
+
+    private final static class IndexFetcher implements Callable<String> {
+
+        private final String url;
+        private final int timeoutMillis;
+
+        public IndexFetcher(final String url, final int timeoutMillis) {
+            this.url = url;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public String call() {
+            return HttpUtil.downloadString(url, timeoutMillis);
+        }
+    }
+
+    // Waits for network connectivity to return (in offline mode), then runs a normal update check.
+    // Thanks to side-by-side installs, this does not disturb a client that is already running.
+    // The check is done by a separate UpdateTask, so none of the launch-time task's state is reused.
+    private final static class ReconcileThread extends Thread {
+
+        private final Logger logger;
+
+        public ReconcileThread(final Logger logger) {
+            super("UpdateReconcileThread");
+            this.logger = logger;
+        }
+
+        @Override
+        public void run() {
+            final UpdateTask task = new UpdateTask();
+            try {
+                task.digest = MessageDigest.getInstance("SHA1");
+                do {
+                    Thread.sleep(RECONCILE_INTERVAL);
+                } while (!task.fetchRemoteIndexes(INDEX_FETCH_TIMEOUT));
+
+                logger.log(Level.INFO, "Network is back. Checking for updates in the background.");
+                try (final UpdateLock lock = task.acquireUpdateLock()) {
+                    if (lock.updatedByOtherProcess) {
+                        logger.log(Level.INFO, "Updates were applied by another launcher instance.");
+                    } else {
+                        task.checkAndApplyUpdates(logger);
+                    }
+                }
+            } catch (final InterruptedException ex) {
+                // launcher is shutting down
+            } catch (final Exception ex) {
+                logger.log(Level.SEVERE, "Error during background update check", ex);
+            }
+        }
+    }
+
+    private final static class UpdateLock implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final FileLock lock;
+        public final boolean updatedByOtherProcess;
+
+        public UpdateLock(final FileChannel channel, final FileLock lock, final boolean updatedByOtherProcess) {
+            this.channel = channel;
+            this.lock = lock;
+            this.updatedByOtherProcess = updatedByOtherProcess;
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+            try {
+                this.lock.release();
+            } finally {
+                this.channel.close();
+            }
         }
     }
 
     private final static class RemoteFile {
 
         String name;
+        long length;
         String hash;
+        String fingerprint;
+        String fileHash; // SHA-1 of the whole (packed) download
+        long unpackedLength = -1;
+
+        String getExpectedHash() {
+            return (fingerprint != null ? fingerprint : hash);
+        }
     }
 
     private class DownloadThread extends Thread {
@@ -698,6 +1257,7 @@ public final class UpdateTask
             } catch (final Exception ex) {
                 String fileName = (file != null ? file.remoteName : "?");
                 logger.log(Level.SEVERE, "Error downloading or deploying an updated file: " + fileName, ex);
+                setWorkerError(ex);
             }
         }
     }
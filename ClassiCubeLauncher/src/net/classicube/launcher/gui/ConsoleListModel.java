@@ -0,0 +1,66 @@
+package net.classicube.launcher.gui;
+
+import java.util.List;
+import javax.swing.AbstractListModel;
+
+// Lines shown by DebugWindow's console, kept in a ring buffer of fixed capacity: once it is full,
+// each new line replaces the oldest one. Adding a batch is O(batch), no matter how many lines are
+// kept, and JList only asks for the lines that are on screen. Must only be used on the EDT.
+final class ConsoleListModel extends AbstractListModel<String> {
+
+    private static final String TAB_SPACES = "    ";
+
+    private final String[] lines;
+    private int head, size, maxLength;
+
+    ConsoleListModel(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        lines = new String[capacity];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(final int index) {
+        return lines[(head + index) % lines.length];
+    }
+
+    // Length (in characters) of the longest line added so far. Never goes down.
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public void addLines(final List<String> newLines) {
+        if (newLines == null) {
+            throw new NullPointerException("newLines");
+        }
+        final int oldSize = size;
+        // Lines beyond capacity would be overwritten right away, so they are skipped.
+        final int skipped = Math.max(0, newLines.size() - lines.length);
+        for (int i = skipped; i < newLines.size(); i++) {
+            final String line = newLines.get(i).replace("\t", TAB_SPACES);
+            maxLength = Math.max(maxLength, line.length());
+            if (size == lines.length) {
+                lines[head] = line;
+                head = (head + 1) % lines.length;
+            } else {
+                lines[(head + size) % lines.length] = line;
+                size++;
+            }
+        }
+        // Old lines that were pushed out, and new lines that are still here
+        final int removed = Math.min(oldSize, oldSize + newLines.size() - size);
+        final int added = size - (oldSize - removed);
+        if (removed > 0) {
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+        if (added > 0) {
+            fireIntervalAdded(this, size - added, size - 1);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package net.classicube.launcher.gui;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Everything shown by DebugWindow's console goes through here: launcher's System.out/err, and
+// client's output (see ClientSupervisor). Bytes are split into lines by the writing thread, and
+// lines wait in a fixed-size ring buffer until DebugWindow's timer takes them all at once -- so
+// writing never touches the EDT, and a chatty writer costs one EDT update per timer tick.
+// If the EDT can't keep up, the oldest lines are dropped (and counted), so memory stays bounded.
+final class ConsoleOutputStream extends OutputStream {
+
+    private static final int CAPACITY = 4096; // lines
+    private static final int MAX_LINE_LENGTH = 4096; // bytes; longer lines are split
+
+    // Launcher and client both write in the platform's default encoding
+    private final Charset charset = Charset.defaultCharset();
+    private final byte[] lineBuffer = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+
+    private final String[] lines = new String[CAPACITY];
+    private int head, count, droppedLines;
+
+    // =============================================================================================
+    //                                                                                 LINE SPLITTER
+    // =============================================================================================
+    @Override
+    public synchronized void write(final int b) {
+        if (b == '\n') {
+            endLine();
+        } else {
+            if (lineLength == MAX_LINE_LENGTH) {
+                endLine();
+            }
+            lineBuffer[lineLength++] = (byte) b;
+        }
+    }
+
+    @Override
+    public synchronized void write(final byte[] buffer, final int offset, final int length) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer");
+        }
+        final int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] == '\n') {
+                appendToLine(buffer, lineStart, i - lineStart);
+                endLine();
+                lineStart = i + 1;
+            }
+        }
+        appendToLine(buffer, lineStart, end - lineStart);
+    }
+
+    // Ends the current line, if it had no line break yet (e.g. once client's output is over).
+    // Not done by flush(), because PrintStream flushes in the middle of lines.
+    public synchronized void finishLine() {
+        if (lineLength > 0) {
+            endLine();
+        }
+    }
+
+    private void appendToLine(final byte[] buffer, int offset, int length) {
+        while (length > 0) {
+            final int chunk = Math.min(length, MAX_LINE_LENGTH - lineLength);
+            System.arraycopy(buffer, offset, lineBuffer, lineLength, chunk);
+            lineLength += chunk;
+            offset += chunk;
+            length -= chunk;
+            if (lineLength == MAX_LINE_LENGTH) {
+                endLine();
+            }
+        }
+    }
+
+    private void endLine() {
+        int length = lineLength;
+        if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+        add(new String(lineBuffer, 0, length, charset));
+        lineLength = 0;
+    }
+
+    // =============================================================================================
+    //                                                                                   RING BUFFER
+    // =============================================================================================
+    private void add(final String line) {
+        if (count == CAPACITY) {
+            // Full: overwrite the oldest line
+            lines[head] = line;
+            head = (head + 1) % CAPACITY;
+            droppedLines++;
+        } else {
+            lines[(head + count) % CAPACITY] = line;
+            count++;
+        }
+    }
+
+    // Takes all waiting lines. If any had to be dropped, a note saying so comes first.
+    // Returns null if there is nothing new.
+    synchronized List<String> takeLines() {
+        if (count == 0 && droppedLines == 0) {
+            return null;
+        }
+        final List<String> batch = new ArrayList<>(count + 1);
+        if (droppedLines > 0) {
+            batch.add("(" + droppedLines + " lines skipped)");
+        }
+        for (int i = 0; i < count; i++) {
+            final int index = (head + i) % CAPACITY;
+            batch.add(lines[index]);
+            lines[index] = null;
+        }
+        head = 0;
+        count = 0;
+        droppedLines = 0;
+        return batch;
+    }
+}
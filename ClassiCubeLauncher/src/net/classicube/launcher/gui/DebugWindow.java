@@ -1,14 +1,24 @@
 package net.classicube.launcher.gui;
 
-import java.io.IOException;
-import java.io.OutputStream;
+import java.awt.FontMetrics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.PrintStream;
-import javax.swing.JTextArea;
+import java.util.List;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+// Shows output of the launcher (System.out/err) and of the client, in debug mode.
+// Lines are kept by a ConsoleListModel (a capped ring buffer) and shown by a JList with fixed cell
+// size, which only lays out and paints the lines that are on screen -- so the console stays
+// responsive with hundreds of thousands of lines. New lines are picked up from the
+// ConsoleOutputStream by a timer, in one batch per tick.
 public class DebugWindow extends javax.swing.JFrame {
 
     static DebugWindow instance;
+    private static final int MAX_LINES = 100000;
+    private static final int UPDATE_INTERVAL = 100; // ms
 
     public static void showWindow() {
         instance = new DebugWindow();
@@ -19,64 +29,76 @@ public class DebugWindow extends javax.swing.JFrame {
         instance.printStream.println(str);
     }
 
+    // Raw output (e.g. from the client process). Lines may be split between calls.
+    public static void write(final byte[] buffer, final int offset, final int length) {
+        instance.consoleStream.write(buffer, offset, length);
+    }
+
+    // Ends the last line written with write(), if it had no line break.
+    public static void finishLine() {
+        instance.consoleStream.finishLine();
+    }
+
     PrintStream printStream;
+    private final ConsoleOutputStream consoleStream = new ConsoleOutputStream();
+    private final ConsoleListModel consoleModel = new ConsoleListModel(MAX_LINES);
+    private final Timer updateTimer;
+    private final int charWidth;
 
     private DebugWindow() {
         initComponents();
-        TextAreaOutputStream outStream = new TextAreaOutputStream(tConsole);
-        printStream = new PrintStream(outStream);
+        tConsole.setModel(consoleModel);
+        // Fixed cell size keeps JList from measuring every line
+        final FontMetrics metrics = tConsole.getFontMetrics(tConsole.getFont());
+        charWidth = metrics.charWidth('M');
+        tConsole.setFixedCellHeight(metrics.getHeight());
+        tConsole.setFixedCellWidth(80 * charWidth);
+        pack();
+        printStream = new PrintStream(consoleStream);
         System.setOut(printStream);
         System.setErr(printStream);
-    }
 
-    public static void setWindowTitle(final String newTitle) {
-        SwingUtilities.invokeLater(new Runnable() {
+        updateTimer = new Timer(UPDATE_INTERVAL, new ActionListener() {
             @Override
-            public void run() {
-                instance.setTitle("ClassiCube Log - " + newTitle);
+            public void actionPerformed(final ActionEvent e) {
+                showNewLines();
             }
         });
+        updateTimer.start();
     }
 
-    private static class TextAreaOutputStream extends OutputStream {
-
-        private final JTextArea textArea;
-        private final StringBuilder sb = new StringBuilder();
-
-        public TextAreaOutputStream(final JTextArea textArea) {
-            this.textArea = textArea;
+    // Runs on the EDT, once per timer tick.
+    private void showNewLines() {
+        final List<String> newLines = consoleStream.takeLines();
+        if (newLines == null) {
+            return;
         }
-
-        @Override
-        public void flush() {
+        // Follow new output only if the view was already at the bottom
+        final Rectangle visible = tConsole.getVisibleRect();
+        final boolean atBottom = (visible.y + visible.height >= tConsole.getHeight() - tConsole.getFixedCellHeight());
+        consoleModel.addLines(newLines);
+        final int width = consoleModel.getMaxLength() * charWidth;
+        if (width > tConsole.getFixedCellWidth()) {
+            tConsole.setFixedCellWidth(width);
         }
-
-        @Override
-        public void close() {
+        if (atBottom) {
+            tConsole.ensureIndexIsVisible(consoleModel.getSize() - 1);
         }
+    }
 
-        @Override
-        public void write(int b) throws IOException {
-
-            if (b == '\r') {
-                return;
-            }
+    @Override
+    public void dispose() {
+        updateTimer.stop();
+        super.dispose();
+    }
 
-            if (b == '\n') {
-                final String text = sb.toString() + "\n";
-                SwingUtilities.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        textArea.append(text);
-                    }
-                });
-                sb.setLength(0);
-
-                return;
+    public static void setWindowTitle(final String newTitle) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                instance.setTitle("ClassiCube Log - " + newTitle);
             }
-
-            sb.append((char) b);
-        }
+        });
     }
 
     /**
@@ -88,23 +110,19 @@ public class DebugWindow extends javax.swing.JFrame {
     private void initComponents() {
 
         javax.swing.JScrollPane jScrollPane1 = new javax.swing.JScrollPane();
-        tConsole = new javax.swing.JTextArea();
+        tConsole = new javax.swing.JList<>();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
 
         jScrollPane1.setVerticalScrollBarPolicy(javax.swing.ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
 
-        tConsole.setEditable(false);
         tConsole.setBackground(new java.awt.Color(0, 0, 0));
-        tConsole.setColumns(80);
         tConsole.setFont(new java.awt.Font("Monospaced", 0, 12)); // NOI18N
         tConsole.setForeground(new java.awt.Color(204, 204, 204));
-        tConsole.setLineWrap(true);
-        tConsole.setRows(20);
-        tConsole.setTabSize(4);
-        tConsole.setWrapStyleWord(true);
+        tConsole.setSelectionBackground(new java.awt.Color(64, 64, 64));
+        tConsole.setSelectionForeground(new java.awt.Color(255, 255, 255));
+        tConsole.setVisibleRowCount(20);
         tConsole.setBorder(null);
-        tConsole.setCaretColor(new java.awt.Color(255, 255, 255));
         jScrollPane1.setViewportView(tConsole);
 
         getContentPane().add(jScrollPane1, java.awt.BorderLayout.CENTER);
@@ -113,6 +131,6 @@ public class DebugWindow extends javax.swing.JFrame {
     }// </editor-fold>//GEN-END:initComponents
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private javax.swing.JTextArea tConsole;
+    private javax.swing.JList<String> tConsole;
     // End of variables declaration//GEN-END:variables
 }
@@ -2,6 +2,7 @@ package net.classicube.launcher.gui;
 
 import java.awt.Color;
 import java.awt.event.ItemEvent;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.prefs.BackingStoreException;
 import javax.swing.JFrame;
@@ -9,6 +10,8 @@ import javax.swing.JRadioButton;
 import javax.swing.JRootPane;
 import javax.swing.border.EmptyBorder;
 import net.classicube.launcher.AccountManager;
+import net.classicube.launcher.ClientInstallManager;
+import net.classicube.launcher.ClientLauncher;
 import net.classicube.launcher.GameServiceType;
 import net.classicube.launcher.DiagnosticInfoUploader;
 import net.classicube.launcher.LogUtil;
@@ -41,6 +44,9 @@ final class PreferencesScreen extends javax.swing.JDialog {
 
         // hook up context menu
         CutCopyPasteAdapter.addToComponent(this.tJavaArgs, true, true);
+
+        // in-process client only works if launcher was started from client's directory
+        xInProcessClient.setEnabled(ClientLauncher.canRunInProcess());
         
         // Pack and center
         pack();
@@ -72,6 +78,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         this.bForgetUsers.setEnabled(hasUsers);
         this.bForgetPasswords.setEnabled(hasPasswords);
         this.bForgetServers.setEnabled(hasResume);
+        this.bRollBack.setEnabled(ClientInstallManager.canRollBack());
     }
 
     // =============================================================================================
@@ -86,6 +93,8 @@ final class PreferencesScreen extends javax.swing.JDialog {
         tJavaArgs.setText(Prefs.getJavaArgs());
         nMemory.setValue(Prefs.getMaxMemory());
         xDebugMode.setSelected(Prefs.getDebugMode());
+        xPrewarmClient.setSelected(Prefs.getPrewarmClient());
+        xInProcessClient.setSelected(Prefs.getInProcessClient());
     }
 
     private void loadUpdateMode(final UpdateMode val) {
@@ -110,9 +119,11 @@ final class PreferencesScreen extends javax.swing.JDialog {
         xRememberUsers.setSelected(Prefs.RememberUsersDefault);
         xRememberPasswords.setSelected(Prefs.RememberPasswordsDefault);
         xRememberServer.setSelected(Prefs.RememberServerDefault);
-        tJavaArgs.setText(Prefs.JavaArgsDefault);
-        nMemory.setValue(Prefs.MaxMemoryDefault);
+        tJavaArgs.setText(Prefs.getJavaArgsDefault());
+        nMemory.setValue(Prefs.getMaxMemoryDefault());
         xDebugMode.setSelected(Prefs.DebugModeDefault);
+        xPrewarmClient.setSelected(Prefs.PrewarmClientDefault);
+        xInProcessClient.setSelected(Prefs.InProcessClientDefault);
     }
 
     private void storePreferences() {
@@ -121,9 +132,15 @@ final class PreferencesScreen extends javax.swing.JDialog {
         Prefs.setRememberUsers(xRememberUsers.isSelected());
         Prefs.setRememberPasswords(xRememberPasswords.isSelected());
         Prefs.setRememberServer(xRememberServer.isSelected());
+        if (!tJavaArgs.getText().equals(Prefs.getJavaArgs()) || (int) nMemory.getValue() != Prefs.getMaxMemory()) {
+            // Player's own choice from now on: ClientGcAdvisor will leave these alone.
+            Prefs.setClientSettingsTuned(false);
+        }
         Prefs.setJavaArgs(tJavaArgs.getText());
         Prefs.setMaxMemory((int) nMemory.getValue());
         Prefs.setDebugMode(xDebugMode.isSelected());
+        Prefs.setPrewarmClient(xPrewarmClient.isSelected());
+        Prefs.setInProcessClient(xInProcessClient.isSelected());
     }
 
     private UpdateMode storeUpdateMode() {
@@ -170,6 +187,27 @@ final class PreferencesScreen extends javax.swing.JDialog {
         }
     }//GEN-LAST:event_bForgetServersActionPerformed
 
+    // =============================================================================================
+    //                                                                                      ROLLBACK
+    // =============================================================================================
+    private void bRollBackActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bRollBackActionPerformed
+        if (ConfirmScreen.show("Warning", "Switch back to the previously installed game version? "
+                + "Game updates will be disabled until you re-enable them.")) {
+            LogUtil.getLogger().log(Level.INFO, "[Roll Back Game Update]");
+            try {
+                if (ClientInstallManager.rollBack()) {
+                    Prefs.setUpdateMode(UpdateMode.DISABLED);
+                    loadUpdateMode(UpdateMode.DISABLED);
+                }
+            } catch (final IOException ex) {
+                LogUtil.getLogger().log(Level.SEVERE, "Error rolling back game update.", ex);
+                ErrorScreen.show("Error rolling back game update",
+                        "Could not switch back to the previous game version.", ex);
+            }
+            checkIfForgetButtonsShouldBeEnabled();
+        }
+    }//GEN-LAST:event_bRollBackActionPerformed
+
     // =============================================================================================
     //                                                                           GUI EVENT LISTENERS
     // =============================================================================================
@@ -195,6 +233,8 @@ final class PreferencesScreen extends javax.swing.JDialog {
         if (!this.xRememberServer.isSelected()) {
             SessionManager.clearAllResumeInfo();
         }
+        // start or stop the background client, and make sure it uses the new settings
+        ClientLauncher.prespawnClient();
         dispose();
     }//GEN-LAST:event_bSaveActionPerformed
 
@@ -240,6 +280,8 @@ final class PreferencesScreen extends javax.swing.JDialog {
 
         rgUpdateMode = new javax.swing.ButtonGroup();
         xFullscreen = new javax.swing.JCheckBox();
+        xPrewarmClient = new javax.swing.JCheckBox();
+        xInProcessClient = new javax.swing.JCheckBox();
         jSeparator1 = new javax.swing.JSeparator();
         javax.swing.JLabel lUpdateMode = new javax.swing.JLabel();
         rUpdateDisabled = new javax.swing.JRadioButton();
@@ -264,6 +306,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         javax.swing.Box.Filler filler1 = new javax.swing.Box.Filler(new java.awt.Dimension(0, 0), new java.awt.Dimension(0, 0), new java.awt.Dimension(32767, 0));
         xDebugMode = new javax.swing.JCheckBox();
         bSubmitDiagInfo = new net.classicube.launcher.gui.JNiceLookingButton();
+        bRollBack = new net.classicube.launcher.gui.JNiceLookingButton();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
         getContentPane().setLayout(new java.awt.GridBagLayout());
@@ -273,13 +316,31 @@ final class PreferencesScreen extends javax.swing.JDialog {
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 0;
-        gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
+        gridBagConstraints.gridwidth = 2;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         getContentPane().add(xFullscreen, gridBagConstraints);
+
+        xPrewarmClient.setText("Keep the game ready in background");
+        xPrewarmClient.setToolTipText("<html>Starts the game in the background while you pick a server, so that joining is much faster.<br>\nUses some extra memory while the launcher is open.<br>\nDefault is OFF.");
         gridBagConstraints = new java.awt.GridBagConstraints();
-        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridx = 2;
+        gridBagConstraints.gridy = 0;
+        gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_END;
+        getContentPane().add(xPrewarmClient, gridBagConstraints);
+
+        xInProcessClient.setText("Run the game inside the launcher");
+        xInProcessClient.setToolTipText("<html>Runs the game inside the launcher, instead of starting a separate Java for it.<br>\nUses less memory, which helps on older computers. Java args (other than -D) and Max memory don't apply.<br>\nOnly used if the launcher was started from the game's folder.<br>\nDefault is OFF.");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 2;
         gridBagConstraints.gridy = 1;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_END;
+        getContentPane().add(xInProcessClient, gridBagConstraints);
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 2;
+        gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
         gridBagConstraints.insets = new java.awt.Insets(8, 0, 8, 0);
         getContentPane().add(jSeparator1, gridBagConstraints);
@@ -287,7 +348,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         lUpdateMode.setText("Install game updates...");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 2;
+        gridBagConstraints.gridy = 3;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         gridBagConstraints.insets = new java.awt.Insets(0, 0, 4, 0);
@@ -298,7 +359,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         rUpdateDisabled.setToolTipText("<html><b>Disable</b>: No game updates will ever be downloaded or installed.");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 3;
+        gridBagConstraints.gridy = 4;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         gridBagConstraints.insets = new java.awt.Insets(0, 20, 0, 0);
@@ -309,7 +370,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         rUpdateNotify.setToolTipText("<html><b>Enable (notify me)</b>: Game updates will be downloaded and installed.<br>\nYou will be notified when that happens, and you'll have an option to review changes in the latest update.<br>\nThis is the default option.");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 4;
+        gridBagConstraints.gridy = 5;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         gridBagConstraints.insets = new java.awt.Insets(0, 20, 0, 0);
@@ -320,14 +381,14 @@ final class PreferencesScreen extends javax.swing.JDialog {
         rUpdateAutomatic.setToolTipText("<html><b>Enable (automatic)</b>: Game updates will be installed automatically and silently.");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 5;
+        gridBagConstraints.gridy = 6;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         gridBagConstraints.insets = new java.awt.Insets(0, 20, 0, 0);
         getContentPane().add(rUpdateAutomatic, gridBagConstraints);
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 6;
+        gridBagConstraints.gridy = 7;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
         gridBagConstraints.insets = new java.awt.Insets(8, 0, 8, 0);
@@ -342,7 +403,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 7;
+        gridBagConstraints.gridy = 8;
         gridBagConstraints.gridwidth = 2;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         getContentPane().add(xRememberUsers, gridBagConstraints);
@@ -355,7 +416,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 2;
-        gridBagConstraints.gridy = 7;
+        gridBagConstraints.gridy = 8;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         getContentPane().add(bForgetUsers, gridBagConstraints);
@@ -369,7 +430,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 8;
+        gridBagConstraints.gridy = 9;
         gridBagConstraints.gridwidth = 2;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         getContentPane().add(xRememberPasswords, gridBagConstraints);
@@ -382,7 +443,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 2;
-        gridBagConstraints.gridy = 8;
+        gridBagConstraints.gridy = 9;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         getContentPane().add(bForgetPasswords, gridBagConstraints);
@@ -391,7 +452,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         xRememberServer.setToolTipText("<html>Choose whether the launcher should remember last-joined server.<br>\nWhen enabled, the [Resume] button will become available, which will reconnect<br>\nyou to the most-recently-joined server using the same username/credentials as last time.");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 9;
+        gridBagConstraints.gridy = 10;
         gridBagConstraints.gridwidth = 2;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         gridBagConstraints.insets = new java.awt.Insets(0, 0, 0, 8);
@@ -405,13 +466,13 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 2;
-        gridBagConstraints.gridy = 9;
+        gridBagConstraints.gridy = 10;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         getContentPane().add(bForgetServers, gridBagConstraints);
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 10;
+        gridBagConstraints.gridy = 11;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
         gridBagConstraints.insets = new java.awt.Insets(8, 0, 8, 0);
@@ -421,7 +482,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         lParameters.setToolTipText("");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 11;
+        gridBagConstraints.gridy = 12;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_END;
         gridBagConstraints.insets = new java.awt.Insets(0, 0, 0, 4);
         getContentPane().add(lParameters, gridBagConstraints);
@@ -429,7 +490,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         tJavaArgs.setToolTipText("<html>Command-line arguments to pass to the client's Java runtime.<br>\nDon't mess with these unless you know exactly what you're doing!");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 1;
-        gridBagConstraints.gridy = 11;
+        gridBagConstraints.gridy = 12;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
         getContentPane().add(tJavaArgs, gridBagConstraints);
@@ -437,16 +498,16 @@ final class PreferencesScreen extends javax.swing.JDialog {
         lMemory.setText("Max memory");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 12;
+        gridBagConstraints.gridy = 13;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_END;
         gridBagConstraints.insets = new java.awt.Insets(0, 0, 0, 4);
         getContentPane().add(lMemory, gridBagConstraints);
 
         nMemory.setModel(new javax.swing.SpinnerNumberModel(Integer.valueOf(64), Integer.valueOf(64), null, Integer.valueOf(16)));
-        nMemory.setToolTipText("<html>The maximum amount of memory, in megabytes, that the game is allowed to use.<br>\nDon't raise this amount unless your game keeps running out of memory on large maps.<br>\nDefault is 800 MB. Going any lower may cause lag and/or crashes.");
+        nMemory.setToolTipText("<html>The maximum amount of memory, in megabytes, that the game is allowed to use.<br>\nDon't raise this amount unless your game keeps running out of memory on large maps.<br>\nDefault depends on how much memory this computer has (512 to 2048 MB). Going any lower may cause lag and/or crashes.");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 1;
-        gridBagConstraints.gridy = 12;
+        gridBagConstraints.gridy = 13;
         gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
         gridBagConstraints.weightx = 0.1;
         getContentPane().add(nMemory, gridBagConstraints);
@@ -454,7 +515,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         jSeparator4.setBorder(javax.swing.BorderFactory.createEmptyBorder(8, 0, 8, 0));
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 14;
+        gridBagConstraints.gridy = 15;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
         gridBagConstraints.insets = new java.awt.Insets(8, 0, 8, 0);
@@ -469,7 +530,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 15;
+        gridBagConstraints.gridy = 16;
         gridBagConstraints.gridwidth = 2;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LAST_LINE_START;
         getContentPane().add(bDefaults, gridBagConstraints);
@@ -482,7 +543,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 2;
-        gridBagConstraints.gridy = 15;
+        gridBagConstraints.gridy = 16;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LAST_LINE_END;
         getContentPane().add(bSave, gridBagConstraints);
 
@@ -494,12 +555,12 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 3;
-        gridBagConstraints.gridy = 15;
+        gridBagConstraints.gridy = 16;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LAST_LINE_END;
         getContentPane().add(bCancel, gridBagConstraints);
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 2;
-        gridBagConstraints.gridy = 12;
+        gridBagConstraints.gridy = 13;
         gridBagConstraints.weightx = 0.1;
         getContentPane().add(filler1, gridBagConstraints);
 
@@ -507,7 +568,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
         xDebugMode.setToolTipText("Enables debug console (requires launcher restart).");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 2;
-        gridBagConstraints.gridy = 12;
+        gridBagConstraints.gridy = 13;
         gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_END;
         getContentPane().add(xDebugMode, gridBagConstraints);
@@ -521,12 +582,27 @@ final class PreferencesScreen extends javax.swing.JDialog {
         });
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
-        gridBagConstraints.gridy = 13;
-        gridBagConstraints.gridwidth = 4;
+        gridBagConstraints.gridy = 14;
+        gridBagConstraints.gridwidth = 2;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
         gridBagConstraints.insets = new java.awt.Insets(5, 0, 0, 0);
         getContentPane().add(bSubmitDiagInfo, gridBagConstraints);
 
+        bRollBack.setText("Roll back game update");
+        bRollBack.setToolTipText("<html>Switch back to the previously installed version of the game.<br>\nNo download is needed. Game updates will be disabled, so that the previous version stays in use.");
+        bRollBack.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                bRollBackActionPerformed(evt);
+            }
+        });
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 2;
+        gridBagConstraints.gridy = 14;
+        gridBagConstraints.gridwidth = java.awt.GridBagConstraints.REMAINDER;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_END;
+        gridBagConstraints.insets = new java.awt.Insets(5, 0, 0, 0);
+        getContentPane().add(bRollBack, gridBagConstraints);
+
         pack();
     }// </editor-fold>//GEN-END:initComponents
 
@@ -536,6 +612,7 @@ final class PreferencesScreen extends javax.swing.JDialog {
     private net.classicube.launcher.gui.JNiceLookingButton bForgetPasswords;
     private net.classicube.launcher.gui.JNiceLookingButton bForgetServers;
     private net.classicube.launcher.gui.JNiceLookingButton bForgetUsers;
+    private net.classicube.launcher.gui.JNiceLookingButton bRollBack;
     private net.classicube.launcher.gui.JNiceLookingButton bSave;
     private net.classicube.launcher.gui.JNiceLookingButton bSubmitDiagInfo;
     private javax.swing.JSeparator jSeparator1;
@@ -547,6 +624,8 @@ final class PreferencesScreen extends javax.swing.JDialog {
     private javax.swing.JTextField tJavaArgs;
     private javax.swing.JCheckBox xDebugMode;
     private javax.swing.JCheckBox xFullscreen;
+    private javax.swing.JCheckBox xPrewarmClient;
+    private javax.swing.JCheckBox xInProcessClient;
     private javax.swing.JCheckBox xRememberPasswords;
     private javax.swing.JCheckBox xRememberServer;
     private javax.swing.JCheckBox xRememberUsers;
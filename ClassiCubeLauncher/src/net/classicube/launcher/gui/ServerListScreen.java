@@ -29,6 +29,7 @@ import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableModel;
+import net.classicube.launcher.ClientLauncher;
 import net.classicube.launcher.GameServiceType;
 import net.classicube.launcher.GameSession;
 import net.classicube.launcher.GetExternalIPTask;
@@ -117,6 +118,9 @@ public final class ServerListScreen extends javax.swing.JFrame {
                     }
                 });
         getServerListTask.execute();
+
+        // get the game ready in background (if enabled), while the player is picking a server
+        ClientLauncher.prespawnClient();
     }
 
     private void enableGui() {
@@ -0,0 +1,115 @@
+package net.classicube.publisher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Computes a whole-jar fingerprint from the zip central directory alone.
+// For every entry (in central directory order), the following is fed into SHA-1:
+//   <raw entry name bytes> '\n' <CRC-32 as 8 lowercase hex digits> ' ' <uncompressed size> '\n'
+// Only the end-of-central-directory record and the central directory itself are read,
+// so this is much cheaper than opening the jar, and catches changes to any entry.
+// Must be kept in sync with net.classicube.launcher.JarFingerprint (and HashGen/hashgen.py)
+final class JarFingerprint {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50,
+            CEN_SIGNATURE = 0x02014b50,
+            EOCD_LENGTH = 22,
+            CEN_HEADER_LENGTH = 46,
+            MAX_COMMENT_LENGTH = 0xFFFF;
+
+    public static String compute(final File jarFile)
+            throws IOException {
+        if (jarFile == null) {
+            throw new NullPointerException("jarFile");
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IOException("SHA1 digest is not available", ex);
+        }
+
+        // Positional reads are used instead of memory-mapping: on Windows, a mapped region keeps
+        // the file locked until it is garbage-collected, which would block replacing the jar.
+        try (final RandomAccessFile raf = new RandomAccessFile(jarFile, "r")) {
+            final FileChannel channel = raf.getChannel();
+            final long fileSize = channel.size();
+
+            // Find end-of-central-directory record, which may be followed by a comment
+            final int tailLength = (int) Math.min(fileSize, EOCD_LENGTH + MAX_COMMENT_LENGTH);
+            final ByteBuffer tail = readFully(channel, fileSize - tailLength, tailLength);
+            int eocdPos = -1;
+            for (int i = tailLength - EOCD_LENGTH; i >= 0; i--) {
+                if (tail.getInt(i) == EOCD_SIGNATURE) {
+                    eocdPos = i;
+                    break;
+                }
+            }
+            if (eocdPos < 0) {
+                throw new IOException("Not a zip file (no central directory): " + jarFile);
+            }
+            final int entryCount = tail.getShort(eocdPos + 10) & 0xFFFF;
+            final long cenSize = tail.getInt(eocdPos + 12) & 0xFFFFFFFFL;
+            final long cenOffset = tail.getInt(eocdPos + 16) & 0xFFFFFFFFL;
+            if (entryCount == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL
+                    || cenSize > Integer.MAX_VALUE || cenOffset + cenSize > fileSize) {
+                throw new IOException("Unsupported or corrupted zip central directory: " + jarFile);
+            }
+
+            // Walk the central directory
+            final ByteBuffer cen = readFully(channel, cenOffset, (int) cenSize);
+            int pos = 0;
+            for (int i = 0; i < entryCount; i++) {
+                if (pos + CEN_HEADER_LENGTH > cenSize || cen.getInt(pos) != CEN_SIGNATURE) {
+                    throw new IOException("Corrupted zip central directory: " + jarFile);
+                }
+                final long crc = cen.getInt(pos + 16) & 0xFFFFFFFFL;
+                final long size = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+                final int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+                final int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+                final int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+                final long nextPos = (long) pos + CEN_HEADER_LENGTH + nameLength + extraLength + commentLength;
+                if (nextPos > cenSize) {
+                    // Entry runs past the end of central directory (truncated or corrupted jar)
+                    throw new IOException("Corrupted zip central directory: " + jarFile);
+                }
+
+                final byte[] name = new byte[nameLength];
+                cen.position(pos + CEN_HEADER_LENGTH);
+                cen.get(name);
+                digest.update(name);
+                final String line = String.format("\n%08x %d\n", crc, size);
+                digest.update(line.getBytes(StandardCharsets.US_ASCII));
+
+                pos = (int) nextPos;
+            }
+        }
+        final String hashString = new BigInteger(1, digest.digest()).toString(16);
+        final StringBuilder sb = new StringBuilder();
+        for (int toPrepend = 40 - hashString.length(); toPrepend > 0; toPrepend--) {
+            sb.append('0');
+        }
+        return sb.append(hashString).toString();
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position, final int length)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,424 @@
+package net.classicube.publisher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Pack200;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+// Server-side tool that packs and compresses launcher/client artifacts (in parallel),
+// and writes the "version" index that the launcher's UpdateTask reads.
+// Replaces HashGen/hashgen.py, and writes a superset of its output:
+//   <packed name> <packed size> <manifest sha1> <fingerprint> sha1=<packed sha1> usize=<jar size>
+//       entries=<entry listing> [delta=<old fingerprint>,<delta name>,<delta size>]
+// Launchers that only know the first three (or four) columns ignore the rest.
+// Also writes one first-install bundle per OS (bundle-<os>.zip), which the self-updater unpacks
+// in a single pass on brand-new installs. Bundles include lzma.jar and everything under
+// <input dir>/resources, if present.
+//
+// Usage: java -jar ClassiCubePublisher.jar <input dir> <output dir> [previous version dir]
+public class Program {
+
+    private static final Logger logger = Logger.getLogger(Program.class.getName());
+    private static final String INDEX_FILE_NAME = "version",
+            MANIFEST_NAME = "META-INF/MANIFEST.MF",
+            DELTA_LIST_NAME = "META-INF/DELTA";
+    private static final String[] ARTIFACTS = {
+        "launcher.jar",
+        "client.jar",
+        "lwjgl.jar",
+        "lwjgl_util.jar",
+        "jinput.jar",
+        "windows_natives.jar",
+        "macosx_natives.jar",
+        "linux_natives.jar",
+        "solaris_natives.jar"
+    };
+
+    public static void main(final String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: java -jar ClassiCubePublisher.jar <input dir> <output dir> [previous version dir]");
+            System.exit(1);
+        }
+        final File inputDir = new File(args[0]);
+        final File outputDir = new File(args[1]);
+        final File previousDir = (args.length > 2 ? new File(args[2]) : null);
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            logger.log(Level.SEVERE, "Unable to make directory {0}", outputDir);
+            System.exit(1);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            // Pack everything in parallel, then write the index in a fixed order
+            final List<Future<String>> indexLines = new ArrayList<>();
+            for (final String artifact : ARTIFACTS) {
+                final File jarFile = new File(inputDir, artifact);
+                final File previousJarFile = (previousDir != null ? new File(previousDir, artifact) : null);
+                indexLines.add(executor.submit(new ArtifactPublisher(jarFile, previousJarFile, outputDir)));
+            }
+            final File indexFile = new File(outputDir, INDEX_FILE_NAME);
+            try (final Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile), StandardCharsets.UTF_8)) {
+                for (final Future<String> line : indexLines) {
+                    writer.write(line.get());
+                    writer.write('\n');
+                }
+            }
+            logger.log(Level.INFO, "Wrote {0}", indexFile);
+
+            final File lzmaJar = new File(inputDir, LZMA_JAR_NAME);
+            if (lzmaJar.exists()) {
+                final List<Future<File>> bundles = new ArrayList<>();
+                for (final String osName : BUNDLE_OS_NAMES) {
+                    bundles.add(executor.submit(new BundleWriter(inputDir, outputDir, osName)));
+                }
+                for (final Future<File> bundle : bundles) {
+                    logger.log(Level.INFO, "Wrote {0}", bundle.get());
+                }
+            } else {
+                logger.log(Level.WARNING, "{0} not found in input directory. Skipping first-install bundles.",
+                        LZMA_JAR_NAME);
+            }
+
+        } catch (final IOException | InterruptedException | ExecutionException ex) {
+            logger.log(Level.SEVERE, "Publishing failed", ex);
+            System.exit(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // =============================================================================================
+    //                                                                                     ARTIFACTS
+    // =============================================================================================
+    // Packs, compresses, and describes one artifact. Returns its line for the version index.
+    private static final class ArtifactPublisher implements Callable<String> {
+
+        private final File jarFile, previousJarFile, outputDir;
+
+        public ArtifactPublisher(final File jarFile, final File previousJarFile, final File outputDir) {
+            this.jarFile = jarFile;
+            this.previousJarFile = previousJarFile;
+            this.outputDir = outputDir;
+        }
+
+        @Override
+        public String call()
+                throws IOException, InterruptedException {
+            final String name = jarFile.getName();
+            logger.log(Level.INFO, "Publishing {0}", name);
+
+            // Pack200 rewrites class files, so everything the launcher checks has to be
+            // computed from the jar as it will look after unpacking on the player's machine.
+            final File packFile = new File(outputDir, name + ".pack");
+            pack200(jarFile, packFile);
+            final File unpackedJar = File.createTempFile(name, ".unpacked.tmp");
+            File oldUnpackedJar = null;
+            try {
+                unpack200(packFile, unpackedJar);
+                final String manifestHash = computeManifestHash(unpackedJar);
+                final String fingerprint = JarFingerprint.compute(unpackedJar);
+                final String entriesName = name + ".entries";
+                writeEntryListing(unpackedJar, new File(outputDir, entriesName));
+
+                final File packedFile = compressLzma(packFile);
+                final StringBuilder line = new StringBuilder();
+                line.append(packedFile.getName())
+                        .append(' ').append(packedFile.length())
+                        .append(' ').append(manifestHash)
+                        .append(' ').append(fingerprint)
+                        .append(" sha1=").append(computeFileHash(packedFile))
+                        .append(" usize=").append(unpackedJar.length())
+                        .append(" entries=").append(entriesName);
+
+                if (previousJarFile != null && previousJarFile.exists()) {
+                    oldUnpackedJar = normalize(previousJarFile);
+                    final String oldFingerprint = JarFingerprint.compute(oldUnpackedJar);
+                    if (!oldFingerprint.equals(fingerprint)) {
+                        final File deltaFile = new File(outputDir,
+                                name + ".delta-" + oldFingerprint.substring(0, 8) + ".zip");
+                        writeDelta(oldUnpackedJar, unpackedJar, deltaFile);
+                        line.append(" delta=").append(oldFingerprint)
+                                .append(',').append(deltaFile.getName())
+                                .append(',').append(deltaFile.length());
+                    }
+                }
+                logger.log(Level.INFO, "Published {0}", packedFile.getName());
+                return line.toString();
+
+            } finally {
+                unpackedJar.delete();
+                if (oldUnpackedJar != null) {
+                    oldUnpackedJar.delete();
+                }
+            }
+        }
+    }
+
+    // =============================================================================================
+    //                                                                          FIRST-INSTALL BUNDLES
+    // =============================================================================================
+    private static final String LZMA_JAR_NAME = "lzma.jar",
+            RESOURCES_DIR_NAME = "resources";
+    private static final String[] BUNDLE_OS_NAMES = {"windows", "macosx", "linux", "solaris"};
+    // Packed artifacts, and where they go in the bundle. Natives are added per OS.
+    // Paths must match the ones used by the launcher's UpdateTask.
+    private static final String[][] BUNDLE_ARTIFACTS = {
+        {"launcher.jar.pack.lzma", "launcher/launcher.jar.pack.lzma"},
+        {"client.jar.pack.lzma", "client/client.jar.pack.lzma"},
+        {"lwjgl.jar.pack.lzma", "client/libs/lwjgl.jar.pack.lzma"},
+        {"lwjgl_util.jar.pack.lzma", "client/libs/lwjgl_util.jar.pack.lzma"},
+        {"jinput.jar.pack.lzma", "client/libs/jinput.jar.pack.lzma"}
+    };
+
+    // Writes bundle-<os>.zip. Everything in it is already compressed, so entries are stored.
+    // lzma.jar has to come first: the self-updater needs it to unpack the entries that follow.
+    private static final class BundleWriter implements Callable<File> {
+
+        private final File inputDir, outputDir;
+        private final String osName;
+
+        public BundleWriter(final File inputDir, final File outputDir, final String osName) {
+            this.inputDir = inputDir;
+            this.outputDir = outputDir;
+            this.osName = osName;
+        }
+
+        @Override
+        public File call()
+                throws IOException {
+            final File bundleFile = new File(outputDir, "bundle-" + osName + ".zip");
+            try (final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(bundleFile))) {
+                writeStoredEntry(out, "launcher/" + LZMA_JAR_NAME, new File(inputDir, LZMA_JAR_NAME));
+                for (final String[] artifact : BUNDLE_ARTIFACTS) {
+                    writeStoredEntry(out, artifact[1], new File(outputDir, artifact[0]));
+                }
+                final String nativesName = osName + "_natives.jar.pack.lzma";
+                writeStoredEntry(out, "client/natives/" + nativesName, new File(outputDir, nativesName));
+
+                final File resourcesDir = new File(inputDir, RESOURCES_DIR_NAME);
+                if (resourcesDir.isDirectory()) {
+                    writeDirectory(out, "client/" + RESOURCES_DIR_NAME + "/", resourcesDir);
+                }
+            }
+            return bundleFile;
+        }
+
+        private static void writeDirectory(final ZipOutputStream out, final String prefix, final File dir)
+                throws IOException {
+            final File[] files = dir.listFiles();
+            if (files == null) {
+                throw new IOException("Failed to list contents of " + dir);
+            }
+            for (final File file : files) {
+                if (file.isDirectory()) {
+                    writeDirectory(out, prefix + file.getName() + "/", file);
+                } else {
+                    writeStoredEntry(out, prefix + file.getName(), file);
+                }
+            }
+        }
+
+        private static void writeStoredEntry(final ZipOutputStream out, final String name, final File file)
+                throws IOException {
+            final byte[] ioBuffer = new byte[64 * 1024];
+            final CRC32 crc = new CRC32();
+            try (final InputStream in = new FileInputStream(file)) {
+                int len;
+                while ((len = in.read(ioBuffer)) != -1) {
+                    crc.update(ioBuffer, 0, len);
+                }
+            }
+            final ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(file.length());
+            entry.setCompressedSize(file.length());
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            try (final InputStream in = new FileInputStream(file)) {
+                int len;
+                while ((len = in.read(ioBuffer)) != -1) {
+                    out.write(ioBuffer, 0, len);
+                }
+            }
+            out.closeEntry();
+        }
+    }
+
+    // Same as "pack200 -E9 -g"
+    private static void pack200(final File jarFile, final File packFile)
+            throws IOException {
+        final Pack200.Packer packer = Pack200.newPacker();
+        packer.properties().put(Pack200.Packer.EFFORT, "9");
+        try (final JarFile in = new JarFile(jarFile)) {
+            try (final FileOutputStream out = new FileOutputStream(packFile)) {
+                packer.pack(in, out);
+            }
+        }
+    }
+
+    // Same as what SharedUpdaterCode does on the player's machine
+    private static void unpack200(final File packFile, final File jarFile)
+            throws IOException {
+        try (final JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile))) {
+            Pack200.newUnpacker().unpack(packFile, out);
+        }
+    }
+
+    // Runs a jar through a Pack200 round-trip, into a temporary file.
+    private static File normalize(final File jarFile)
+            throws IOException {
+        final File packFile = File.createTempFile(jarFile.getName(), ".pack.tmp");
+        final File unpackedJar = File.createTempFile(jarFile.getName(), ".unpacked.tmp");
+        try {
+            pack200(jarFile, packFile);
+            unpack200(packFile, unpackedJar);
+        } finally {
+            packFile.delete();
+        }
+        return unpackedJar;
+    }
+
+    // Same as "lzma -9", which replaces X.pack with X.pack.lzma
+    private static File compressLzma(final File packFile)
+            throws IOException, InterruptedException {
+        final File lzmaFile = new File(packFile.getPath() + ".lzma");
+        if (lzmaFile.exists() && !lzmaFile.delete()) {
+            throw new IOException("Unable to replace " + lzmaFile);
+        }
+        final Process lzma = new ProcessBuilder("lzma", "-9", packFile.getAbsolutePath())
+                .inheritIO()
+                .start();
+        if (lzma.waitFor() != 0 || !lzmaFile.exists()) {
+            throw new IOException("lzma failed on " + packFile);
+        }
+        return lzmaFile;
+    }
+
+    // =============================================================================================
+    //                                                                              HASHES & LISTINGS
+    // =============================================================================================
+    private static String computeManifestHash(final File jarFile)
+            throws IOException {
+        try (final ZipFile zipFile = new ZipFile(jarFile)) {
+            final ZipEntry manifest = zipFile.getEntry(MANIFEST_NAME);
+            if (manifest == null) {
+                return "<none>";
+            }
+            try (final InputStream is = zipFile.getInputStream(manifest)) {
+                return computeHash(is);
+            }
+        }
+    }
+
+    private static String computeFileHash(final File file)
+            throws IOException {
+        try (final InputStream is = new FileInputStream(file)) {
+            return computeHash(is);
+        }
+    }
+
+    private static String computeHash(final InputStream is)
+            throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IOException("SHA1 digest is not available", ex);
+        }
+        final byte[] ioBuffer = new byte[64 * 1024];
+        try (final DigestInputStream dis = new DigestInputStream(is, digest)) {
+            while (dis.read(ioBuffer) != -1) {
+                // DigestInputStream is doing its job, we just need to read through it.
+            }
+        }
+        final String hashString = new BigInteger(1, digest.digest()).toString(16);
+        final StringBuilder sb = new StringBuilder();
+        for (int toPrepend = 40 - hashString.length(); toPrepend > 0; toPrepend--) {
+            sb.append('0');
+        }
+        return sb.append(hashString).toString();
+    }
+
+    // One line per entry, in central directory order: <crc32 hex> <uncompressed size> <name>
+    private static void writeEntryListing(final File jarFile, final File listingFile)
+            throws IOException {
+        try (final ZipFile zipFile = new ZipFile(jarFile)) {
+            try (final Writer writer = new OutputStreamWriter(new FileOutputStream(listingFile), StandardCharsets.UTF_8)) {
+                for (final ZipEntry entry : Collections.list(zipFile.entries())) {
+                    writer.write(String.format("%08x %d %s\n", entry.getCrc(), entry.getSize(), entry.getName()));
+                }
+            }
+        }
+    }
+
+    // =============================================================================================
+    //                                                                                        DELTAS
+    // =============================================================================================
+    // Writes a zip with every entry of newJar that was added or changed since oldJar.
+    // Names of removed entries are listed (one per line) in META-INF/DELTA.
+    private static void writeDelta(final File oldJar, final File newJar, final File deltaFile)
+            throws IOException {
+        final Map<String, ZipEntry> oldEntries = new HashMap<>();
+        try (final ZipFile oldZip = new ZipFile(oldJar)) {
+            for (final ZipEntry entry : Collections.list(oldZip.entries())) {
+                oldEntries.put(entry.getName(), entry);
+            }
+        }
+        final byte[] ioBuffer = new byte[64 * 1024];
+        try (final ZipFile newZip = new ZipFile(newJar)) {
+            try (final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(deltaFile))) {
+                out.setLevel(9);
+                for (final ZipEntry entry : Collections.list(newZip.entries())) {
+                    final ZipEntry oldEntry = oldEntries.remove(entry.getName());
+                    if (oldEntry != null && oldEntry.getCrc() == entry.getCrc()
+                            && oldEntry.getSize() == entry.getSize()) {
+                        continue; // unchanged
+                    }
+                    out.putNextEntry(new ZipEntry(entry.getName()));
+                    try (final InputStream in = newZip.getInputStream(entry)) {
+                        int len;
+                        while ((len = in.read(ioBuffer)) != -1) {
+                            out.write(ioBuffer, 0, len);
+                        }
+                    }
+                    out.closeEntry();
+                }
+                final StringBuilder removed = new StringBuilder();
+                for (final String name : oldEntries.keySet()) {
+                    removed.append(name).append('\n');
+                }
+                out.putNextEntry(new ZipEntry(DELTA_LIST_NAME));
+                out.write(removed.toString().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package net.classicube.selfupdater;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Starts the launcher in its own JVM, with an application class-data-sharing (AppCDS) archive.
+// Most of launcher's startup time goes into loading and verifying classes (Swing, Nimbus, and our
+// own), and a CDS archive lets the JVM map them in pre-parsed instead.
+// The archive is made by the launcher's own first run (-XX:ArchiveClassesAtExit, dumped when the
+// launcher exits), and reused on later runs (-XX:SharedArchiveFile). It is tied to the exact JVM
+// and launcher.jar that made it, which are recorded in an info file next to it. When either one
+// changes, the archive is made again. -Xshare:auto makes the JVM silently ignore an archive that
+// it can't use, so a bad archive costs nothing but the speedup. If the new JVM still exits during
+// startup (e.g. an option that this JVM rejects), the archive is dropped, and the launcher is loaded
+// in-process instead.
+// Dynamic archives need Java 13 or newer. On older JVMs, launcher is loaded in-process, as before.
+// The new JVM is started in client's directory, so that launcher can run the client in its own JVM
+// (see InProcessClient in the launcher), which needs client's directory as the working directory.
+final class ClassDataSharing {
+
+    public static final String MODE_PROPERTY = "net.classicube.launcher.cds";
+    private static final String ARCHIVE_FILE_NAME = "launcher.jsa",
+            INFO_FILE_NAME = "launcher.jsa.info",
+            MODE_CREATE = "create",
+            MODE_USE = "use";
+    private static final int MIN_JAVA_VERSION = 13,
+            STARTUP_GRACE_PERIOD = 3000, // ms, that the new JVM has to stay up (or exit normally)
+            EXIT_POLL_INTERVAL = 50; // ms
+
+    // Returns false if CDS is not supported by this JVM, or launcher could not be started
+    // in a new JVM. The caller should then load the launcher in-process.
+    public static boolean startLauncher(final Logger logger, final File launcherDir, final File launcherJar,
+            final File workingDir, final String entryClass, final String[] systemProperties) {
+        if (logger == null) {
+            throw new NullPointerException("logger");
+        }
+        if (launcherDir == null) {
+            throw new NullPointerException("launcherDir");
+        }
+        if (launcherJar == null) {
+            throw new NullPointerException("launcherJar");
+        }
+        if (workingDir == null) {
+            throw new NullPointerException("workingDir");
+        }
+        if (entryClass == null) {
+            throw new NullPointerException("entryClass");
+        }
+        if (systemProperties == null) {
+            throw new NullPointerException("systemProperties");
+        }
+        final int javaVersion = getJavaVersion();
+        if (javaVersion < MIN_JAVA_VERSION) {
+            logger.log(Level.INFO, "Class data sharing not used: Java {0} is too old.",
+                    System.getProperty("java.specification.version"));
+            return false;
+        }
+
+        final File archiveFile = new File(launcherDir, ARCHIVE_FILE_NAME);
+        final File infoFile = new File(launcherDir, INFO_FILE_NAME);
+        final String expectedInfo = describe(launcherJar);
+        final String mode;
+        if (archiveFile.exists() && expectedInfo.equals(readInfo(logger, infoFile))) {
+            mode = MODE_USE;
+        } else {
+            // Missing or stale. ArchiveClassesAtExit refuses to overwrite an archive that's in use,
+            // so the old one is removed first.
+            mode = MODE_CREATE;
+            archiveFile.delete();
+            try {
+                Files.write(infoFile.toPath(), expectedInfo.getBytes(StandardCharsets.UTF_8));
+            } catch (final IOException ex) {
+                logger.log(Level.WARNING, "Could not write " + INFO_FILE_NAME, ex);
+                return false;
+            }
+        }
+
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        if (MODE_USE.equals(mode)) {
+            command.add("-XX:SharedArchiveFile=" + archiveFile.getAbsolutePath());
+            command.add("-Xshare:auto");
+        } else {
+            command.add("-XX:ArchiveClassesAtExit=" + archiveFile.getAbsolutePath());
+        }
+        for (final String property : systemProperties) {
+            command.add("-D" + property + "=" + System.getProperty(property, ""));
+        }
+        command.add("-D" + MODE_PROPERTY + "=" + mode);
+        command.add("-cp");
+        command.add(launcherJar.getAbsolutePath());
+        command.add(entryClass);
+
+        if (!workingDir.exists() && !workingDir.mkdirs()) {
+            logger.log(Level.WARNING, "Could not create {0}", workingDir);
+            return false;
+        }
+        final Process process;
+        try {
+            process = new ProcessBuilder(command).directory(workingDir).inheritIO().start();
+        } catch (final IOException ex) {
+            logger.log(Level.WARNING, "Could not start launcher in a new JVM", ex);
+            return false;
+        }
+        final Integer exitCode;
+        try {
+            exitCode = waitForEarlyExit(process);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+        if (exitCode != null && exitCode != 0) {
+            logger.log(Level.WARNING, "Launcher''s JVM exited during startup "
+                    + "(exit code {0}, class data sharing: {1}). Loading launcher in-process instead.",
+                    new Object[]{exitCode, mode});
+            archiveFile.delete();
+            infoFile.delete();
+            return false;
+        }
+        logger.log(Level.INFO, "Started launcher in a new JVM (class data sharing: {0})", mode);
+        return true;
+    }
+
+    // Returns the exit code if process exits within STARTUP_GRACE_PERIOD, or null if still running.
+    // Process.waitFor(timeout) is Java 8+, so exit code is polled instead.
+    private static Integer waitForEarlyExit(final Process process)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + STARTUP_GRACE_PERIOD;
+        while (true) {
+            try {
+                return process.exitValue();
+            } catch (final IllegalThreadStateException ex) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return null;
+                }
+                Thread.sleep(EXIT_POLL_INTERVAL);
+            }
+        }
+    }
+
+    // Identifies the JVM and launcher.jar that an archive belongs to
+    private static String describe(final File launcherJar) {
+        return System.getProperty("java.home") + '\n'
+                + System.getProperty("java.vm.version") + '\n'
+                + launcherJar.length() + ' ' + launcherJar.lastModified() + '\n';
+    }
+
+    private static String readInfo(final Logger logger, final File infoFile) {
+        if (!infoFile.exists()) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(infoFile.toPath()), StandardCharsets.UTF_8);
+        } catch (final IOException ex) {
+            logger.log(Level.WARNING, "Could not read " + INFO_FILE_NAME, ex);
+            return null;
+        }
+    }
+
+    // "1.7" -> 7, "1.8" -> 8, "9" -> 9, "13" -> 13, etc. Returns 0 if unknown.
+    private static int getJavaVersion() {
+        final String version = System.getProperty("java.specification.version", "0");
+        try {
+            if (version.startsWith("1.")) {
+                return Integer.parseInt(version.substring(2));
+            }
+            return Integer.parseInt(version);
+        } catch (final NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -1,21 +1,43 @@
 package net.classicube.selfupdater;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.math.BigInteger;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.util.logging.FileHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Pack200;
+import java.util.logging.ErrorManager;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import javax.swing.JOptionPane;
 
 public class Program {
@@ -25,9 +47,20 @@ public class Program {
     private static final String LAUNCHER_JAR_NAME = "launcher.jar";
     private static final String LAUNCHER_ENTRY_METHOD = "main";
     private static final String BUG_REPORT_URL = "http://is.gd/CCL_bugs";
+    // Must match PathUtil.CLIENT_DIR_NAME in the launcher
+    private static final String CLIENT_DIR_NAME = ".net.classicube.client";
+    // Must match PathUtil.SELF_UPDATER_LOG_FILE_NAME and SELF_UPDATER_LOG_OLD_FILE_NAME in the launcher
+    private static final String LOG_FILE_NAME = "selfupdater.log",
+            LOG_OLD_FILE_NAME = "selfupdater.old.log";
+    private static final int MAX_LOG_SIZE = 1024 * 1024;
+    // Wall-clock time (in ms) when self-updater started. Read by the launcher, to log time-to-first-window.
+    private static final String START_TIME_PROPERTY = "net.classicube.selfupdater.startTime";
     private static File launcherDir, launcherJar;
+    private static volatile ProgressIndicator progressWindow;
 
     public static void main(String[] args) {
+        final long startTime = System.nanoTime();
+        System.setProperty(START_TIME_PROPERTY, Long.toString(System.currentTimeMillis()));
         System.setProperty("java.net.preferIPv4Stack", "true");
 
         try {
@@ -45,13 +78,30 @@ public class Program {
                 if (newLauncherJar.exists()) {
                     replaceFile(newLauncherJar, launcherJar);
                 } else if (!launcherJar.exists()) {
-                    ProgressIndicator progressWindow = new ProgressIndicator();
+                    progressWindow = new ProgressIndicator();
                     progressWindow.setVisible(true);
-                    downloadLauncher();
-                    progressWindow.dispose();
+                    try {
+                        if (!installFromBundle()) {
+                            downloadLauncher();
+                        }
+                    } finally {
+                        progressWindow.dispose();
+                        progressWindow = null;
+                    }
+                }
+                final boolean warmStart = isValidatedState();
+                if (!warmStart) {
+                    final long probeStart = System.nanoTime();
+                    SharedUpdaterCode.testLzma(logger);
+                    logger.log(Level.INFO, "Checked lzma.jar in {0} ms", elapsedMillis(probeStart));
+                    writeValidatedState();
+                }
+                logger.log(Level.INFO, "Self-updater done in {0} ms (warm start: {1})",
+                        new Object[]{elapsedMillis(startTime), warmStart});
+                if (!ClassDataSharing.startLauncher(logger, launcherDir, launcherJar, getClientDir(),
+                        LAUNCHER_ENTRY_CLASS, new String[]{"java.net.preferIPv4Stack", START_TIME_PROPERTY})) {
+                    startLauncher(launcherJar);
                 }
-                SharedUpdaterCode.testLzma(logger);
-                startLauncher(launcherJar);
                 return;
             } catch (final Exception ex) {
                 logger.log(Level.SEVERE, "Failed to start launcher", ex);
@@ -75,33 +125,300 @@ public class Program {
         }
     }
 
+    private static File getClientDir() {
+        return new File(SharedUpdaterCode.getAppDataDir(), CLIENT_DIR_NAME);
+    }
+
     private static void initLogging() {
         logger.setLevel(Level.ALL);
-        final File logFile = new File(launcherDir, "selfupdater.log");
+        final File logFile = new File(launcherDir, LOG_FILE_NAME);
+        final File oldLogFile = new File(launcherDir, LOG_OLD_FILE_NAME);
+        SharedUpdaterCode.rotateLog(logger, logFile, oldLogFile);
         try {
-            final FileHandler handler = new FileHandler(logFile.getAbsolutePath());
-            handler.setFormatter(new SimpleFormatter());
-            logger.addHandler(handler);
+            logger.addHandler(new LogFileHandler(logFile, oldLogFile));
         } catch (final IOException | SecurityException ex) {
             fatalError("Could not create log file:", ex);
         }
     }
 
+    // Writes the self-updater's log. Once the file grows past MAX_LOG_SIZE, it is rotated (like on
+    // startup) and a new one is started -- unlike FileHandler, which would truncate it, losing the
+    // start of this session.
+    private static final class LogFileHandler extends StreamHandler {
+
+        private final File logFile, oldLogFile;
+        private long logSize;
+        private boolean rotating;
+
+        LogFileHandler(final File logFile, final File oldLogFile)
+                throws IOException {
+            this.logFile = logFile;
+            this.oldLogFile = oldLogFile;
+            setFormatter(new SimpleFormatter());
+            setLevel(Level.ALL);
+            open();
+        }
+
+        @Override
+        public synchronized void publish(final LogRecord record) {
+            if (logSize >= MAX_LOG_SIZE && !rotating) {
+                rotate();
+            }
+            super.publish(record);
+            flush();
+        }
+
+        // Records logged while rotating (e.g. by rotateLog itself) are dropped: the file is closed.
+        private void rotate() {
+            rotating = true;
+            try {
+                super.close();
+                SharedUpdaterCode.rotateLog(logger, logFile, oldLogFile);
+                open();
+            } catch (final IOException ex) {
+                reportError("Could not rotate log file", ex, ErrorManager.OPEN_FAILURE);
+            } finally {
+                rotating = false;
+            }
+        }
+
+        private void open()
+                throws IOException {
+            logSize = 0;
+            setOutputStream(new FilterOutputStream(new FileOutputStream(logFile)) {
+                @Override
+                public void write(final byte[] b, final int off, final int len)
+                        throws IOException {
+                    out.write(b, off, len);
+                    logSize += len;
+                }
+
+                @Override
+                public void write(final int b)
+                        throws IOException {
+                    out.write(b);
+                    logSize++;
+                }
+            });
+        }
+    }
+
+    // If lzma.jar is already in place, launcher.jar.pack.lzma is decompressed and unpacked while it
+    // streams in. Otherwise, both are downloaded at the same time: lzma.jar on one thread, and the
+    // launcher (into a temporary file) on another. Launcher is unpacked once lzma.jar is ready.
     private static void downloadLauncher() throws IOException {
         final File lzmaJar = new File(launcherDir, SharedUpdaterCode.LZMA_JAR_NAME);
-        if (!lzmaJar.exists()) {
-            final File lzmaTempFile = downloadFile("lzma.jar");
-            replaceFile(lzmaTempFile, lzmaJar);
+        final String remoteName = LAUNCHER_JAR_NAME + PACKED_SUFFIX;
+        if (lzmaJar.exists()) {
+            try (final InputStream in = new BufferedInputStream(openStream(remoteName))) {
+                unpackLauncher(in);
+            }
+            return;
         }
-        final File launcherTempFile = downloadFile("launcher.jar.pack.lzma");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
         try {
-            final File processedLauncherFile = SharedUpdaterCode.processDownload(
-                    logger, launcherTempFile, "launcher.jar.pack.lzma", "launcher.jar");
-            replaceFile(processedLauncherFile, launcherJar);
-        } catch (IOException ex) {
+            final Future<?> lzmaDownload = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    final File lzmaTempFile = downloadFile(SharedUpdaterCode.LZMA_JAR_NAME);
+                    replaceFile(lzmaTempFile, lzmaJar);
+                    return null;
+                }
+            });
+            final Future<File> launcherDownload = executor.submit(new Callable<File>() {
+                @Override
+                public File call() throws IOException {
+                    return downloadFile(remoteName);
+                }
+            });
+            final File packedTempFile = waitFor(launcherDownload);
+            try {
+                waitFor(lzmaDownload);
+                try (final InputStream in = new BufferedInputStream(new FileInputStream(packedTempFile))) {
+                    unpackLauncher(in);
+                }
+            } finally {
+                packedTempFile.delete();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void unpackLauncher(final InputStream in)
+            throws IOException {
+        final File launcherTempFile = File.createTempFile(LAUNCHER_JAR_NAME, ".unpacked.tmp");
+        try {
+            unpackStream(in, launcherTempFile);
+        } catch (final IOException ex) {
+            launcherTempFile.delete();
             logger.log(Level.SEVERE, "Error unpacking launcher.jar", ex);
             throw new IOException("Error unpacking launcher.jar", ex);
         }
+        replaceFile(launcherTempFile, launcherJar);
+    }
+
+    private static <T> T waitFor(final Future<T> task)
+            throws IOException {
+        try {
+            return task.get();
+        } catch (final InterruptedException ex) {
+            throw new IOException("Interrupted while downloading", ex);
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Error downloading launcher component", ex.getCause());
+        }
+    }
+
+    // Decompresses (LZMA) and unpacks (Pack200) a ".pack.lzma" stream into given jar file.
+    // Does not close the given stream.
+    private static void unpackStream(final InputStream in, final File jarFile)
+            throws IOException {
+        // Pack200 closes its input when done, but callers may have more to read.
+        final InputStream nonClosingIn = new FilterInputStream(in) {
+            @Override
+            public void close() {
+            }
+        };
+        try (final InputStream lzmaIn = SharedUpdaterCode.makeLzmaInputStream(logger, nonClosingIn)) {
+            try (final JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile))) {
+                Pack200.newUnpacker().unpack(lzmaIn, jarOut);
+            }
+        }
+    }
+
+    // Starts downloading given launcher component, and counts it towards download progress.
+    private static InputStream openStream(final String remoteName)
+            throws IOException {
+        final URLConnection connection = new URL(SharedUpdaterCode.BASE_URL + remoteName).openConnection();
+        connection.setConnectTimeout(DOWNLOAD_TIMEOUT);
+        connection.setReadTimeout(DOWNLOAD_TIMEOUT);
+        final InputStream in = connection.getInputStream();
+        final long length = connection.getContentLengthLong();
+        if (length > 0) {
+            bytesTotal.addAndGet(length);
+            reportProgress();
+        }
+        return new CountingInputStream(in);
+    }
+
+    // =============================================================================================
+    //                                                                          FIRST-INSTALL BUNDLE
+    // =============================================================================================
+    private static final String BUNDLE_LAUNCHER_PREFIX = "launcher/",
+            BUNDLE_CLIENT_PREFIX = "client/",
+            PACKED_SUFFIX = ".pack.lzma";
+
+    // On a brand-new machine, everything (launcher, client, libraries, natives for this OS, and
+    // resources) is fetched as a single zip, and unpacked as it streams in. Entries are stored
+    // under "launcher/" and "client/", relative to launcher's and client's directories. lzma.jar
+    // is the first entry, so that ".pack.lzma" entries after it can be unpacked on the fly.
+    // Returns false if the bundle could not be used -- per-file downloads should be used instead.
+    // Whatever was unpacked is still verified (and, if needed, repaired) by the launcher.
+    private static boolean installFromBundle() {
+        final File clientDir = getClientDir();
+        if (clientDir.exists()) {
+            // Not a fresh install. Launcher will only download what's missing or outdated.
+            return false;
+        }
+        final String osName = getBundleOsName();
+        if (osName == null) {
+            return false;
+        }
+        final String bundleName = "bundle-" + osName + ".zip";
+        logger.log(Level.INFO, "Installing from {0}", bundleName);
+        try {
+            try (final ZipInputStream zis = new ZipInputStream(new BufferedInputStream(openStream(bundleName)))) {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        extractBundleEntry(zis, entry.getName(), clientDir);
+                    }
+                }
+            }
+            if (!launcherJar.exists()) {
+                throw new IOException("Bundle did not contain " + LAUNCHER_JAR_NAME);
+            }
+            return true;
+        } catch (final IOException | RuntimeException ex) {
+            logger.log(Level.WARNING, "Could not install from " + bundleName
+                    + ", falling back to per-file downloads.", ex);
+            bytesDone.set(0);
+            bytesTotal.set(0);
+            return false;
+        }
+    }
+
+    private static void extractBundleEntry(final InputStream zis, final String name, final File clientDir)
+            throws IOException {
+        final File baseDir;
+        final String path;
+        if (name.startsWith(BUNDLE_LAUNCHER_PREFIX)) {
+            baseDir = launcherDir;
+            path = name.substring(BUNDLE_LAUNCHER_PREFIX.length());
+        } else if (name.startsWith(BUNDLE_CLIENT_PREFIX)) {
+            baseDir = clientDir;
+            path = name.substring(BUNDLE_CLIENT_PREFIX.length());
+        } else {
+            logger.log(Level.WARNING, "Skipping unexpected bundle entry {0}", name);
+            return;
+        }
+        if (path.isEmpty() || path.startsWith("/") || path.contains("..")) {
+            throw new IOException("Invalid bundle entry: " + name);
+        }
+        final boolean isPacked = path.endsWith(PACKED_SUFFIX);
+        final File targetFile = new File(baseDir,
+                isPacked ? path.substring(0, path.length() - PACKED_SUFFIX.length()) : path);
+        final File targetDir = targetFile.getParentFile();
+        if (!targetDir.exists() && !targetDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + targetDir);
+        }
+        logger.log(Level.FINE, "Unpacking {0}", name);
+
+        final File tempFile = File.createTempFile(targetFile.getName(), ".bundled.tmp");
+        boolean replaced = false;
+        try {
+            if (isPacked) {
+                unpackStream(zis, tempFile);
+            } else {
+                try (final FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+                    final byte[] ioBuffer = SharedUpdaterCode.takeBuffer();
+                    try {
+                        int len;
+                        while ((len = zis.read(ioBuffer)) > 0) {
+                            fileOut.write(ioBuffer, 0, len);
+                        }
+                    } finally {
+                        SharedUpdaterCode.releaseBuffer(ioBuffer);
+                    }
+                }
+            }
+            replaceFile(tempFile, targetFile);
+            replaced = true;
+        } finally {
+            if (!replaced) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    // Same names as the launcher uses for LWJGL natives
+    private static String getBundleOsName() {
+        switch (OperatingSystem.detect()) {
+            case WINDOWS:
+                return "windows";
+            case MACOS:
+                return "macosx";
+            case NIX:
+                return "linux";
+            case SOLARIS:
+                return "solaris";
+            default:
+                return null;
+        }
     }
 
     private static void startLauncher(final File launcherJar)
@@ -114,18 +431,124 @@ public class Program {
     // Load the entry point from launcher's jar
     private static Class<?> loadLauncher(final File launcherJar)
             throws IOException, ClassNotFoundException {
-        final URL[] urls = {new URL("jar:file:" + launcherJar + "!/")};
-        final URLClassLoader loader = URLClassLoader.newInstance(urls);
+        final URL[] urls = {launcherJar.toURI().toURL()};
+        final URLClassLoader loader = new LauncherClassLoader(urls);
         return loader.loadClass(LAUNCHER_ENTRY_CLASS);
     }
 
+    // Launcher loads classes from several threads at once (EDT, SwingWorkers, executors).
+    // A parallel-capable loader locks per class name, instead of locking the whole loader.
+    // Plain file URLs let URLClassLoader read the jar directly, instead of going through
+    // a JarURLConnection for every class.
+    private static final class LauncherClassLoader extends URLClassLoader {
+
+        static {
+            ClassLoader.registerAsParallelCapable();
+        }
+
+        LauncherClassLoader(final URL[] urls) {
+            super(urls, Program.class.getClassLoader());
+        }
+    }
+
+    // =============================================================================================
+    //                                                                             WARM-START MARKER
+    // =============================================================================================
+    // Records size, mtime, and hash of every jar that was validated (lzma.jar probed, launcher.jar
+    // in place), one per line: <name> <size> <mtime> <sha1>
+    // If nothing changed since, the LZMA probe (which loads lzma.jar through its own class loader)
+    // is skipped. Deleted along with all other launcher files when the user clicks [Retry].
+    private static final String VALIDATED_STATE_FILE_NAME = "selfupdater.validated";
+    private static final String[] VALIDATED_JAR_NAMES = {SharedUpdaterCode.LZMA_JAR_NAME, LAUNCHER_JAR_NAME};
+
+    private static boolean isValidatedState() {
+        final File stateFile = new File(launcherDir, VALIDATED_STATE_FILE_NAME);
+        if (!stateFile.exists()) {
+            return false;
+        }
+        try {
+            final List<String> lines = Files.readAllLines(stateFile.toPath(), StandardCharsets.UTF_8);
+            if (lines.size() != VALIDATED_JAR_NAMES.length) {
+                return false;
+            }
+            for (int i = 0; i < VALIDATED_JAR_NAMES.length; i++) {
+                final String[] parts = lines.get(i).split(" ");
+                final File jarFile = new File(launcherDir, VALIDATED_JAR_NAMES[i]);
+                if (parts.length != 4 || !parts[0].equals(jarFile.getName())
+                        || Long.parseLong(parts[1]) != jarFile.length()) {
+                    return false;
+                }
+                // Size matches. If mtime differs too (e.g. file was touched or copied), compare contents.
+                if (Long.parseLong(parts[2]) != jarFile.lastModified()
+                        && !parts[3].equals(computeFileHash(jarFile))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final IOException | NumberFormatException ex) {
+            logger.log(Level.WARNING, "Could not read " + VALIDATED_STATE_FILE_NAME, ex);
+            return false;
+        }
+    }
+
+    private static void writeValidatedState() {
+        final File stateFile = new File(launcherDir, VALIDATED_STATE_FILE_NAME);
+        try {
+            final StringBuilder sb = new StringBuilder();
+            for (final String jarName : VALIDATED_JAR_NAMES) {
+                final File jarFile = new File(launcherDir, jarName);
+                sb.append(jarName)
+                        .append(' ').append(jarFile.length())
+                        .append(' ').append(jarFile.lastModified())
+                        .append(' ').append(computeFileHash(jarFile))
+                        .append('\n');
+            }
+            Files.write(stateFile.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException ex) {
+            // Not fatal: next start will just probe lzma.jar again.
+            logger.log(Level.WARNING, "Could not write " + VALIDATED_STATE_FILE_NAME, ex);
+            stateFile.delete();
+        }
+    }
+
+    private static String computeFileHash(final File file)
+            throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IOException("SHA1 digest is not available", ex);
+        }
+        try (final InputStream is = new FileInputStream(file)) {
+            final byte[] ioBuffer = SharedUpdaterCode.takeBuffer();
+            try {
+                int len;
+                while ((len = is.read(ioBuffer)) != -1) {
+                    digest.update(ioBuffer, 0, len);
+                }
+            } finally {
+                SharedUpdaterCode.releaseBuffer(ioBuffer);
+            }
+        }
+        final String hashString = new BigInteger(1, digest.digest()).toString(16);
+        final StringBuilder sb = new StringBuilder();
+        for (int toPrepend = 40 - hashString.length(); toPrepend > 0; toPrepend--) {
+            sb.append('0');
+        }
+        return sb.append(hashString).toString();
+    }
+
+    private static long elapsedMillis(final long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
     private static File downloadFile(final String remoteName) throws IOException {
         try {
             final File tempFile = File.createTempFile(remoteName, ".downloaded");
-            final URL website = new URL(SharedUpdaterCode.BASE_URL + remoteName);
-            final ReadableByteChannel rbc = Channels.newChannel(website.openStream());
-            try (final FileOutputStream fos = new FileOutputStream(tempFile)) {
-                fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+            try (final ReadableByteChannel rbc = Channels.newChannel(openStream(remoteName))) {
+                try (final FileOutputStream fos = new FileOutputStream(tempFile)) {
+                    fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+                }
             }
             return tempFile;
         } catch (IOException ex) {
@@ -134,6 +557,54 @@ public class Program {
         }
     }
 
+    // =============================================================================================
+    //                                                                             DOWNLOAD PROGRESS
+    // =============================================================================================
+    private static final int DOWNLOAD_TIMEOUT = 15000;
+    // Totals for all downloads so far, including concurrent ones
+    private static final AtomicLong bytesDone = new AtomicLong(),
+            bytesTotal = new AtomicLong();
+
+    private static void reportProgress() {
+        final ProgressIndicator window = progressWindow;
+        if (window != null) {
+            window.setProgress(bytesDone.get(), bytesTotal.get());
+        }
+    }
+
+    // Counts every byte read towards download progress.
+    private static final class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read()
+                throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            final int count = super.read(b, off, len);
+            count(count);
+            return count;
+        }
+
+        private static void count(final int count) {
+            if (count > 0) {
+                bytesDone.addAndGet(count);
+                reportProgress();
+            }
+        }
+    }
+
     // Replace contents of destFile with sourceFile
     private static void replaceFile(final File sourceFile, final File destFile) throws IOException {
         try {
@@ -1,5 +1,7 @@
 package net.classicube.selfupdater;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 
 
@@ -14,6 +16,37 @@ public class ProgressIndicator extends javax.swing.JFrame {
         setLocationRelativeTo(null);
     }
 
+    // Shows how many bytes were downloaded so far. Safe to call from any thread.
+    // Display is only refreshed when the shown value changes, so this can be called for every read.
+    public void setProgress(final long bytesDone, final long bytesTotal) {
+        final int newValue;
+        if (bytesTotal > 0) {
+            newValue = (int) (Math.min(bytesDone, bytesTotal) * 1000 / bytesTotal);
+        } else {
+            newValue = (int) (bytesDone / (100 * 1024)); // total not known
+        }
+        if (lastValue.getAndSet(newValue) == newValue) {
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (bytesTotal > 0) {
+                    jProgressBar1.setIndeterminate(false);
+                    jProgressBar1.setMaximum(1000);
+                    jProgressBar1.setValue(newValue);
+                    jLabel2.setText(String.format("Downloading... %.1f / %.1f MB",
+                            bytesDone / MEGABYTE, bytesTotal / MEGABYTE));
+                } else {
+                    jLabel2.setText(String.format("Downloading... %.1f MB", bytesDone / MEGABYTE));
+                }
+            }
+        });
+    }
+
+    private static final double MEGABYTE = 1024 * 1024;
+    private final AtomicInteger lastValue = new AtomicInteger(-1);
+
     /**
      * This method is called from within the constructor to initialize the form. WARNING: Do NOT
      * modify this code. The content of this method is always regenerated by the Form Editor.
@@ -8,12 +8,17 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Pack200;
+import java.util.zip.GZIPOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +33,39 @@ public class SharedUpdaterCode {
     private static File launcherPath,
             appDataPath;
 
+    // Pool of reusable I/O buffers, shared by all updater threads. At most MAX_POOLED_BUFFERS of
+    // each kind are retained; buffers taken while the pool is empty are freshly allocated.
+    public static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 8;
+    private static final BlockingQueue<byte[]> heapBuffers
+            = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+    private static final BlockingQueue<ByteBuffer> directBuffers
+            = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    public static byte[] takeBuffer() {
+        final byte[] buffer = heapBuffers.poll();
+        return (buffer != null ? buffer : new byte[IO_BUFFER_SIZE]);
+    }
+
+    public static void releaseBuffer(final byte[] buffer) {
+        if (buffer != null && buffer.length == IO_BUFFER_SIZE) {
+            heapBuffers.offer(buffer);
+        }
+    }
+
+    // Direct buffers are meant for FileChannel I/O, and are returned cleared.
+    public static ByteBuffer takeDirectBuffer() {
+        final ByteBuffer buffer = directBuffers.poll();
+        return (buffer != null ? buffer : ByteBuffer.allocateDirect(IO_BUFFER_SIZE));
+    }
+
+    public static void releaseDirectBuffer(final ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == IO_BUFFER_SIZE) {
+            buffer.clear();
+            directBuffers.offer(buffer);
+        }
+    }
+
     public static synchronized File getLauncherDir() throws IOException {
         if (launcherPath == null) {
             final File userDir = getAppDataDir();
@@ -65,6 +103,94 @@ public class SharedUpdaterCode {
         return appDataPath;
     }
 
+    // =============================================================================================
+    //                                                                                  LOG ROTATION
+    // =============================================================================================
+    // When a log is rotated, <name>.log becomes <name>.old.log, which is kept uncompressed so
+    // that diagnostics can read it cheaply. The previous <name>.old.log is gzipped (in background)
+    // into <name>.old.log.1.gz, shifting older archives up; at most MAX_LOG_ARCHIVES are kept.
+    // Shared by the launcher and the self-updater, which rotate their own logs on startup.
+    public static final int MAX_LOG_ARCHIVES = 5;
+    private static final String LOG_PENDING_SUFFIX = ".pending";
+
+    public static void rotateLog(final Logger logger, final File logFile, final File oldLogFile) {
+        if (logger == null) {
+            throw new NullPointerException("logger");
+        }
+        if (logFile == null) {
+            throw new NullPointerException("logFile");
+        }
+        if (oldLogFile == null) {
+            throw new NullPointerException("oldLogFile");
+        }
+        if (!logFile.exists()) {
+            return;
+        }
+        final File pendingFile = new File(oldLogFile.getPath() + LOG_PENDING_SUFFIX);
+        if (pendingFile.exists()) {
+            // Left over from a compression that was cut short (e.g. by exit)
+            archiveLog(logger, pendingFile, oldLogFile);
+        }
+        if (oldLogFile.exists() && !oldLogFile.renameTo(pendingFile)) {
+            oldLogFile.delete();
+        }
+        if (!logFile.renameTo(oldLogFile)) {
+            logger.log(Level.WARNING, "Could not rotate {0}", logFile);
+        }
+        if (pendingFile.exists()) {
+            final Thread thread = new Thread("LogArchiver") {
+                @Override
+                public void run() {
+                    archiveLog(logger, pendingFile, oldLogFile);
+                }
+            };
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+    }
+
+    // Gzips given file into the first archive slot (after shifting the others), then deletes it.
+    private static synchronized void archiveLog(final Logger logger, final File pendingFile, final File oldLogFile) {
+        if (!pendingFile.exists()) {
+            return; // already done
+        }
+        final File oldestArchive = getLogArchive(oldLogFile, MAX_LOG_ARCHIVES);
+        if (oldestArchive.exists() && !oldestArchive.delete()) {
+            logger.log(Level.WARNING, "Could not delete {0}", oldestArchive);
+        }
+        for (int i = MAX_LOG_ARCHIVES - 1; i >= 1; i--) {
+            final File archive = getLogArchive(oldLogFile, i);
+            if (archive.exists()) {
+                archive.renameTo(getLogArchive(oldLogFile, i + 1));
+            }
+        }
+        final File newArchive = getLogArchive(oldLogFile, 1);
+        final File tempFile = new File(newArchive.getPath() + ".tmp");
+        final byte[] ioBuffer = takeBuffer();
+        try {
+            try (final InputStream in = new FileInputStream(pendingFile);
+                    final OutputStream out = new GZIPOutputStream(new FileOutputStream(tempFile))) {
+                int len;
+                while ((len = in.read(ioBuffer)) > 0) {
+                    out.write(ioBuffer, 0, len);
+                }
+            }
+            if (!tempFile.renameTo(newArchive)) {
+                throw new IOException("Could not rename " + tempFile);
+            }
+        } catch (final IOException ex) {
+            logger.log(Level.WARNING, "Could not compress " + pendingFile, ex);
+            tempFile.delete();
+        } finally {
+            releaseBuffer(ioBuffer);
+        }
+        pendingFile.delete();
+    }
+
+    private static File getLogArchive(final File oldLogFile, final int index) {
+        return new File(oldLogFile.getPath() + "." + index + ".gz");
+    }
+
     public static File processDownload(final Logger logger, final File downloadedFile, final String remoteUrl, final String namePart)
             throws FileNotFoundException, IOException {
         if (logger == null) {
@@ -151,9 +277,13 @@ public class SharedUpdaterCode {
                 try (final InputStream compressedIn = SharedUpdaterCode.makeLzmaInputStream(logger, bufferedIn)) {
                     try (final FileOutputStream fileOut = new FileOutputStream(decompressedOutput)) {
                         int len;
-                        final byte[] ioBuffer = new byte[64 * 1024];
-                        while ((len = compressedIn.read(ioBuffer)) > 0) {
-                            fileOut.write(ioBuffer, 0, len);
+                        final byte[] ioBuffer = takeBuffer();
+                        try {
+                            while ((len = compressedIn.read(ioBuffer)) > 0) {
+                                fileOut.write(ioBuffer, 0, len);
+                            }
+                        } finally {
+                            releaseBuffer(ioBuffer);
                         }
                     }
                 }
@@ -16,10 +16,12 @@ files = [
     'solaris_natives.jar'
 ]
 
+# Returns name of the packed file, and fingerprint of the jar that the launcher will unpack from it
 def packfile(filename):
     call("pack200 -E9 -g "+filename+".pack "+filename, shell=True)
+    fingerprint = fingerprintpacked(filename+".pack")
     call("lzma -9 "+filename+".pack", shell=True)
-    return filename+".pack.lzma"
+    return filename+".pack.lzma", fingerprint
 
 def hashfile(jarname, hasher, blocksize=65536):
     zf = zipfile.ZipFile(jarname, 'r')
@@ -28,7 +30,35 @@ def hashfile(jarname, hasher, blocksize=65536):
     zf.close()
     return hasher.hexdigest()
 
+# Whole-jar fingerprint, computed from central directory records only.
+# Must match net.classicube.launcher.JarFingerprint
+def fingerprintfile(jarname):
+    hasher = hashlib.sha1()
+    zf = zipfile.ZipFile(jarname, 'r')
+    for info in zf.infolist():
+        name = info.filename
+        if isinstance(name, unicode):
+            # re-encode the name the same way it is stored in the zip
+            if info.flag_bits & 0x800:
+                name = name.encode('utf-8')
+            else:
+                name = name.encode('cp437')
+        hasher.update(name)
+        hasher.update('\n%08x %d\n' % (info.CRC & 0xffffffff, info.file_size))
+    zf.close()
+    return hasher.hexdigest()
+
+# Pack200 rewrites class files, and the launcher only ever sees the unpacked jar.
+# So the fingerprint has to be computed from a Pack200 round-trip, not from the original jar.
+def fingerprintpacked(packname):
+    unpackedname = packname+".unpacked"
+    call("unpack200 "+packname+" "+unpackedname, shell=True)
+    try:
+        return fingerprintfile(unpackedname)
+    finally:
+        os.remove(unpackedname)
+
 for f in files:
     hash = hashfile(f, hashlib.sha1())
-    packedname = packfile(f)
-    print packedname, os.path.getsize(packedname), hash
+    packedname, fingerprint = packfile(f)
+    print packedname, os.path.getsize(packedname), hash, fingerprint